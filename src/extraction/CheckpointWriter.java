@@ -0,0 +1,146 @@
+/****************************************************************/
+/* Class CheckpointWriter                                       */
+/* Writes the classified definitions in IOB format as they are  */
+/* completed, recording checkpoints a run can be resumed from   */
+/*                                                              */
+/* Author: Vivian Silva                                         */
+/****************************************************************/
+
+package extraction;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+public class CheckpointWriter {
+
+	private final DefinitionParser dp;
+	private final String outputfile;
+	private final File checkpointfile;
+	private final int interval;
+
+	private FileOutputStream stream;
+	private Writer writer;
+
+	//Definitions written to the output file and definitions written since the last checkpoint
+	private int committed = 0;
+	private int uncommitted = 0;
+
+	//The checkpoint file, next to the output file, holds the number of definitions already written and the
+	//length of the output file at that point. An interval of 0 only checkpoints at the end
+	public CheckpointWriter(DefinitionParser dp, String outputfile, int interval, boolean resume) throws IOException{
+
+		this.dp = dp;
+		this.outputfile = outputfile;
+		this.checkpointfile = new File(outputfile + ".checkpoint");
+		this.interval = interval;
+
+		long length = 0;
+
+		if (resume && !checkpointfile.exists()){
+			//Without a checkpoint there is no way to know what the output holds, so it is left as it is
+			throw new IOException("Nothing to resume: no checkpoint file " + checkpointfile + " (the run may have finished, or "
+					+ "never started); run without resuming to classify the input again");
+		}
+
+		if (resume){
+			BufferedReader br = new BufferedReader(new FileReader(checkpointfile));
+			try{
+				String line = null;
+
+				while ((line = br.readLine()) != null) {
+					if (line.startsWith("definitions = ")){
+						committed = Integer.parseInt(line.substring(line.indexOf('=')+2));
+					}
+					else if (line.startsWith("bytes = ")){
+						length = Long.parseLong(line.substring(line.indexOf('=')+2));
+					}
+				}
+			}
+			finally{
+				br.close();
+			}
+		}
+		else if (checkpointfile.exists() && !checkpointfile.delete()){
+			//A new run truncates the output, so a checkpoint left by an earlier run must not be resumed from
+			throw new IOException("Could not remove the old checkpoint file " + checkpointfile);
+		}
+
+		//Drop anything written after the checkpoint, or everything in a new run
+		RandomAccessFile file = new RandomAccessFile(outputfile, "rw");
+		try{
+			if (file.length() < length){
+				throw new IOException("Cannot resume: " + outputfile + " has " + file.length() + " bytes but its checkpoint records " 
+						+ length);
+			}
+			file.setLength(length);
+		}
+		finally{
+			file.close();
+		}
+
+		if (resume){
+			System.out.println("Resuming after " + committed + " definitions already classified");
+		}
+
+		stream = new FileOutputStream(outputfile, true);
+		writer = new BufferedWriter(new OutputStreamWriter(stream));
+	}
+
+	//Return the number of definitions of the input already written, to be skipped
+	public int getResumePoint(){
+		return committed;
+	}
+
+	//Write a classified definition, in input order
+	public void add(List<RoleSpan> def) throws IOException{
+
+		writer.write(dp.toIOB(def));
+		uncommitted++;
+
+		if (interval > 0 && uncommitted >= interval){
+			checkpoint();
+		}
+	}
+
+	//Make the definitions written so far durable and record them in the checkpoint file
+	public void checkpoint() throws IOException{
+
+		writer.flush();
+		stream.getFD().sync();
+		committed += uncommitted;
+		uncommitted = 0;
+
+		//Write the new checkpoint aside and replace the old one with it, so that it is never left half written
+		File temp = new File(checkpointfile.getPath() + ".tmp");
+		FileWriter out = new FileWriter(temp);
+		try{
+			out.write("definitions = " + committed + "\n");
+			out.write("bytes = " + stream.getChannel().size() + "\n");
+		}
+		finally{
+			out.close();
+		}
+		Files.move(temp.toPath(), checkpointfile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	//Write the remaining definitions; the checkpoint file is removed once the whole input is written
+	public void close() throws IOException{
+
+		checkpoint();
+		writer.close();
+		checkpointfile.delete();
+
+		System.out.println(committed + " classified definitions saved in " + outputfile + ".");
+	}
+}
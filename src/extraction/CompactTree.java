@@ -0,0 +1,242 @@
+/****************************************************************/
+/* Class CompactTree                                            */
+/* Read-only array encoding of a parse tree, giving the words   */
+/* under any node as a view of the leaves instead of a copy     */
+/*                                                              */
+/* Author: Vivian Silva                                         */
+/****************************************************************/
+
+package extraction;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.stanford.nlp.trees.PennTreebankLanguagePack;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreebankLanguagePack;
+
+public class CompactTree {
+
+	//Phrasal and POS labels seen in any tree, each identified by a number; words are never interned, as they are
+	//unbounded over a run
+	private static final Map<String, Integer> labelIds = new ConcurrentHashMap<String, Integer>();
+	private static final AtomicInteger nextLabelId = new AtomicInteger();
+
+	//Labels given a bit in the label masks, compared with the basic category of the nodes (NN and VB stand for any
+	//category containing them, as /NN.?/ and /VB.?/)
+	public static final List<String> MASK_LABELS = Arrays.asList("ROOT", "S", "SBAR", "NP", "VP", "PP", "ADJP", "ADVP", "PRT",
+			"POS", "CC", "DT", "TO", "NN", "VB", "for", "and");
+
+	private static final TreebankLanguagePack tlp = new PennTreebankLanguagePack();
+	//Mask bits of the phrasal and POS labels
+	private static final Map<String, Long> labelBits = new ConcurrentHashMap<String, Long>();
+
+	//Nodes in preorder; -1 marks a missing parent, child or sibling
+	private final int[] parent;
+	private final int[] firstChild;
+	private final int[] nextSibling;
+	private final int[] label;
+	private final String[] values;
+
+	//Leaves [leafStart, leafEnd) under each node
+	private final int[] leafStart;
+	private final int[] leafEnd;
+
+	//Bits of the mask labels found in each subtree
+	private final long[] labelMask;
+
+	private final String[] leaves;
+	private final List<String> leafList;
+
+	private final Map<Tree, Integer> positions = new IdentityHashMap<Tree, Integer>();
+	private int size = 0;
+	private int leafCount = 0;
+
+	public CompactTree(Tree tree){
+
+		int nodes = tree.size();
+
+		parent = new int[nodes];
+		firstChild = new int[nodes];
+		nextSibling = new int[nodes];
+		label = new int[nodes];
+		values = new String[nodes];
+		leafStart = new int[nodes];
+		leafEnd = new int[nodes];
+		leaves = new String[nodes];
+		labelMask = new long[nodes];
+
+		add(tree, -1);
+
+		leafList = Collections.unmodifiableList(Arrays.asList(leaves).subList(0, leafCount));
+	}
+
+	private int add(Tree tree, int parentNode){
+
+		int node = size++;
+
+		parent[node] = parentNode;
+		firstChild[node] = -1;
+		nextSibling[node] = -1;
+		values[node] = tree.value();
+		label[node] = tree.isLeaf() ? -1 : getLabelId(tree.value());
+		labelMask[node] = tree.isLeaf() ? computeLabelBits(tree.value()) : getLabelBits(tree.value());
+		leafStart[node] = leafCount;
+		positions.put(tree, node);
+
+		if (tree.isLeaf()){
+			leaves[leafCount++] = tree.value();
+		}
+
+		int previous = -1;
+		for (Tree child : tree.children()){
+			int childNode = add(child, node);
+
+			if (previous < 0){
+				firstChild[node] = childNode;
+			}
+			else{
+				nextSibling[previous] = childNode;
+			}
+			previous = childNode;
+			labelMask[node] |= labelMask[childNode];
+		}
+		leafEnd[node] = leafCount;
+
+		return node;
+	}
+
+	//Return the number of a phrasal or POS label, numbering it the first time it is seen
+	private static int getLabelId(String value){
+
+		String key = value == null ? "" : value;
+		Integer id = labelIds.get(key);
+
+		if (id == null){
+			//Two threads may number the same label at once; only the first number is kept
+			Integer numbered = nextLabelId.getAndIncrement();
+			id = labelIds.putIfAbsent(key, numbered);
+
+			if (id == null){
+				id = numbered;
+			}
+		}
+		return id;
+	}
+
+	//Return the bits of the mask labels a phrasal or POS label stands for
+	private static long getLabelBits(String value){
+
+		if (value == null){
+			return 0;
+		}
+
+		Long bits = labelBits.get(value);
+
+		if (bits == null){
+			bits = computeLabelBits(value);
+			labelBits.put(value, bits);
+		}
+		return bits;
+	}
+
+	//Return the bits of the mask labels a node label stands for
+	private static long computeLabelBits(String value){
+
+		if (value == null){
+			return 0;
+		}
+
+		String category = tlp.basicCategory(value);
+		long bits = 0L;
+
+		for (int i=0; i < MASK_LABELS.size(); i++){
+			String maskLabel = MASK_LABELS.get(i);
+
+			if (maskLabel.equals("NN") || maskLabel.equals("VB") ? category.contains(maskLabel) : category.equals(maskLabel)){
+				bits |= 1L << i;
+			}
+		}
+		return bits;
+	}
+
+	//Return the mask of a set of labels of MASK_LABELS
+	public static long getMask(String... maskLabels){
+
+		long mask = 0;
+
+		for (String maskLabel : maskLabels){
+			int bit = MASK_LABELS.indexOf(maskLabel);
+
+			if (bit < 0){
+				throw new IllegalArgumentException("No mask bit for label " + maskLabel);
+			}
+			mask |= 1L << bit;
+		}
+		return mask;
+	}
+
+	//Whether a tree is the encoded tree or one of its subtrees
+	public boolean contains(Tree tree){
+		return positions.containsKey(tree);
+	}
+
+	//Return the node of a subtree of the encoded tree, or -1
+	public int getNode(Tree tree){
+
+		Integer node = positions.get(tree);
+		return node == null ? -1 : node;
+	}
+
+	public int size(){
+		return size;
+	}
+
+	public int getParent(int node){
+		return parent[node];
+	}
+
+	public int getFirstChild(int node){
+		return firstChild[node];
+	}
+
+	public int getNextSibling(int node){
+		return nextSibling[node];
+	}
+
+	//Return the number of the label of a phrasal or POS node, or -1 for a leaf
+	public int getLabelId(int node){
+		return label[node];
+	}
+
+	public String getLabel(int node){
+		return values[node];
+	}
+
+	public int getLeafStart(int node){
+		return leafStart[node];
+	}
+
+	public int getLeafEnd(int node){
+		return leafEnd[node];
+	}
+
+	//Return the mask of the labels found in the subtree of a node
+	public long getLabelMask(int node){
+		return labelMask[node];
+	}
+
+	//Return the words under a node, as a read-only view of the leaves
+	public List<String> getWords(int node){
+		return leafList.subList(leafStart[node], leafEnd[node]);
+	}
+
+	public List<String> getWords(Tree tree){
+		return getWords(positions.get(tree));
+	}
+}
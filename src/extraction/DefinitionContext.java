@@ -0,0 +1,226 @@
+/****************************************************************/
+/* Class DefinitionContext                                      */
+/* Annotation of a single definition, computed once and shared  */
+/* by the parse tree, dependency and named entity queries       */
+/*                                                              */
+/* Author: Vivian Silva                                         */
+/****************************************************************/
+
+package extraction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.TaggedWord;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+import edu.stanford.nlp.semgraph.SemanticGraph;
+import edu.stanford.nlp.semgraph.SemanticGraphFactory;
+import edu.stanford.nlp.trees.GrammaticalStructure;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreeCoreAnnotations.TreeAnnotation;
+import edu.stanford.nlp.util.CoreMap;
+
+public class DefinitionContext {
+
+	//Annotators run over every definition; also identifies the parses in the parse cache
+	public static final String ANNOTATORS = "tokenize, ssplit, pos, lemma, parse";
+
+	private final String text;
+	private final Annotation document;
+	private final List<Tree> trees = new ArrayList<Tree>();
+	private final List<String> words = new ArrayList<String>();
+
+	//Computed only when a rule asks for them
+	private List<CompactTree> compactTrees;
+	private List<SemanticGraph> dependencies;
+	private List<String> nerTags;
+
+	public DefinitionContext(String text){
+		this(text, annotate(text));
+	}
+	
+	//Build the context of a definition already annotated, e.g. as part of a batch
+	public DefinitionContext(String text, Annotation document){
+
+		this.text = text;
+		this.document = document;
+
+	    for (CoreMap sentence : document.get(CoreAnnotations.SentencesAnnotation.class)){
+	    	trees.add(sentence.get(TreeAnnotation.class));
+
+	    	for (CoreLabel token : sentence.get(CoreAnnotations.TokensAnnotation.class)){
+	    		words.add(token.word());
+	    	}
+	    }
+	}
+	
+	//Build the context of a definition from its parse trees, e.g. read from the parse cache; the tokens are the leaves
+	public DefinitionContext(String text, List<Tree> trees){
+
+		this.text = text;
+		this.document = null;
+		this.trees.addAll(trees);
+
+		for (Tree tree : trees){
+			for (Tree leaf : tree.getLeaves()){
+				words.add(leaf.value());
+			}
+		}
+	}
+	
+	//Return the pipeline that annotates the definitions
+	public static StanfordCoreNLP getPipeline(){
+		
+		Properties props = new Properties();
+	    props.setProperty("annotators", ANNOTATORS);
+	    
+	    return DefinitionParser.getPipeline(props);
+	}
+	
+	private static Annotation annotate(String text){
+		
+		Annotation document = new Annotation(text);
+		getPipeline().annotate(document);
+		
+		return document;
+	}
+
+	public String getText(){
+		return text;
+	}
+
+	//Return the parse trees, one per sentence
+	public List<Tree> getTrees(){
+		return trees;
+	}
+
+	//Return the array encoding of the parse tree a node belongs to, or null if it isn't part of this definition's trees
+	public CompactTree getCompactTree(Tree node){
+
+		if (compactTrees == null){
+			compactTrees = new ArrayList<CompactTree>();
+
+			for (Tree tree : trees){
+				compactTrees.add(new CompactTree(tree));
+			}
+		}
+
+		for (CompactTree compact : compactTrees){
+			if (compact.contains(node)){
+				return compact;
+			}
+		}
+		return null;
+	}
+
+	//Return the basic dependencies, one graph per sentence, converted from the constituency trees
+	public List<SemanticGraph> getDependencies(){
+
+		if (dependencies == null){
+		    dependencies = new ArrayList<SemanticGraph>();
+		    
+		    for (Tree tree : trees){
+		    	dependencies.add(SemanticGraphFactory.makeFromTree(tree, SemanticGraphFactory.Mode.BASIC, GrammaticalStructure.Extras.NONE, null));
+		    }
+		}
+		return dependencies;
+	}
+
+	//Return the named entity tag of every token, tagging each sentence as a whole
+	public List<String> getNERTags(){
+
+		if (nerTags == null){
+			ParseCache cache = DefinitionParser.getParseCache();
+			
+			if (cache != null){
+				nerTags = cache.getNERTags(text, DefinitionParser.getNERModel());
+			}
+			
+			if (nerTags == null){
+				nerTags = new ArrayList<String>();
+	
+				for (List<CoreLabel> tokens : getSentenceTokens()){
+					for (CoreLabel token : DefinitionParser.getNERClassifier().classifySentence(tokens)){
+						nerTags.add(token.get(CoreAnnotations.AnswerAnnotation.class));
+					}
+				}
+				
+				if (cache != null){
+					cache.putNERTags(text, DefinitionParser.getNERModel(), nerTags);
+				}
+			}
+		}
+		return nerTags;
+	}
+	
+	//Return the tokens of each sentence, rebuilt from the tree leaves when the definition wasn't annotated in this run
+	private List<List<CoreLabel>> getSentenceTokens(){
+		
+		List<List<CoreLabel>> sentences = new ArrayList<List<CoreLabel>>();
+		
+		if (document != null){
+			for (CoreMap sentence : document.get(CoreAnnotations.SentencesAnnotation.class)){
+				sentences.add(sentence.get(CoreAnnotations.TokensAnnotation.class));
+			}
+		}
+		else{
+			for (Tree tree : trees){
+				List<CoreLabel> tokens = new ArrayList<CoreLabel>();
+				
+				for (TaggedWord tagged : tree.taggedYield()){
+					CoreLabel token = new CoreLabel();
+					token.setWord(tagged.word());
+					token.setValue(tagged.word());
+					token.setOriginalText(tagged.word());
+					token.setTag(tagged.tag());
+					tokens.add(token);
+				}
+				sentences.add(tokens);
+			}
+		}
+		return sentences;
+	}
+
+	//Return the tokens of the definition, the words of the parse tree leaves
+	public List<String> getWords(){
+		return words;
+	}
+
+	//Find the first sequence of tokens that, joined as in DefinitionParser.toExpression, equals the fragment
+	int[] findTokens(String fragment){
+
+		if (fragment.length() == 0){
+			return null;
+		}
+
+		for (int i=0; i < words.size(); i++){
+			int p = 0;
+
+			for (int j=i; j < words.size(); j++){
+				String word = words.get(j);
+
+				if (j > i && !word.equals("\'s")){
+					if (p < fragment.length() && fragment.charAt(p) == ' '){
+						p++;
+					}
+					else{
+						break;
+					}
+				}
+				if (!fragment.startsWith(word, p)){
+					break;
+				}
+				p += word.length();
+
+				if (p == fragment.length()){
+					return new int[]{i, j+1};
+				}
+			}
+		}
+		return null;
+	}
+}
@@ -8,45 +8,78 @@
 package extraction;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.net.URL;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import edu.mit.jwi.Dictionary;
-import edu.mit.jwi.IDictionary;
-import edu.mit.jwi.item.IIndexWord;
-import edu.mit.jwi.item.IWord;
-import edu.mit.jwi.item.POS;
 import edu.stanford.nlp.ie.crf.CRFClassifier;
-import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.IndexedWord;
 import edu.stanford.nlp.ling.Word;
 import edu.stanford.nlp.pipeline.Annotation;
 import edu.stanford.nlp.pipeline.StanfordCoreNLP;
 import edu.stanford.nlp.semgraph.SemanticGraph;
-import edu.stanford.nlp.semgraph.SemanticGraphCoreAnnotations;
 import edu.stanford.nlp.semgraph.SemanticGraphEdge;
 import edu.stanford.nlp.trees.Tree;
-import edu.stanford.nlp.trees.TreeCoreAnnotations.TreeAnnotation;
-import edu.stanford.nlp.trees.tregex.TregexMatcher;
-import edu.stanford.nlp.trees.tregex.TregexPattern;
-import edu.stanford.nlp.util.CoreMap;
 import edu.stanford.nlp.util.logging.RedwoodConfiguration;
 
 public class DefinitionParser {
 	
 	private static String wnPath;
-	private IDictionary dict;
+	private static String nerModel = "edu/stanford/nlp/models/ner/english.muc.7class.distsim.crf.ser.gz";
+	private static boolean wnInMemory = true;
+	private static boolean wnPreload = false;
+	private static int entryCacheSize = 50000;
+	private static String parseCacheFile = "";
+	private static boolean indexedMatching = false;
+	
+	//WordNet lemmas, shared by all the parser instances
+	private WordNetLexicon lexicon;
+	
+	//Extraction rules, compiled once and shared by all the parser instances
+	private RuleSet rules;
+	
+	//Results of getLongestEntry, shared by all the parser instances
+	private static LookupCache<String, String> entryCache;
+	
+	//Aligner of the roles found, shared by all the parser instances so that its counts cover the whole run
+	private static final SpanAligner aligner = new SpanAligner();
+	
+	//Parse trees and named entity tags kept on disk across runs, if enabled
+	private static ParseCache parseCache;
+	
+	//Index of the parse tree being searched, when the rules are matched from an index instead of TRegex
+	private TreeIndex treeIndex;
+	
+	//Results of the rule expressions matched against the trees of the current definition
+	private final MatchMemo matchMemo = new MatchMemo();
+	
+	//Annotation of the definition currently being analyzed
+	private DefinitionContext context;
+	
+	//Annotations computed ahead by annotateBatch, waiting for their definitions to be analyzed
+	private final Map<String, DefinitionContext> prefetched = new HashMap<String, DefinitionContext>();
+	
+	//NER classifier shared by all the parser instances, loaded on first use
+	private static volatile CRFClassifier<CoreLabel> nerClassifier;
+	
+	//Annotation pipelines built so far, keyed by their annotators and properties
+	private static final Map<String, StanfordCoreNLP> pipelines = new ConcurrentHashMap<String, StanfordCoreNLP>();
+	private static final Map<String, Long> pipelineLoadTimes = new ConcurrentHashMap<String, Long>();
+	private static final Map<String, AtomicInteger> pipelineReuses = new ConcurrentHashMap<String, AtomicInteger>();
 	
 	public DefinitionParser() throws IOException{
 		
@@ -62,6 +95,24 @@ public class DefinitionParser {
 						if (line.startsWith("wn_path = ")){
 							wnPath = line.substring(line.indexOf('=')+2);
 						}
+						else if (line.startsWith("ner_model = ")){
+							nerModel = line.substring(line.indexOf('=')+2);
+						}
+						else if (line.startsWith("wn_in_memory = ")){
+							wnInMemory = line.endsWith("true");
+						}
+						else if (line.startsWith("wn_preload = ")){
+							wnPreload = line.endsWith("true");
+						}
+						else if (line.startsWith("entry_cache_size = ")){
+							entryCacheSize = Integer.parseInt(line.substring(line.indexOf('=')+2).trim());
+						}
+						else if (line.startsWith("parse_cache = ")){
+							parseCacheFile = line.substring(line.indexOf('=')+2).trim();
+						}
+						else if (line.startsWith("match_engine = ")){
+							indexedMatching = line.substring(line.indexOf('=')+2).trim().equals("visitor");
+						}
 					}
 				}
 			} catch (IOException e) {
@@ -71,78 +122,61 @@ public class DefinitionParser {
 			f.printStackTrace();
 		}
     	
-    	//Initialize WordNet dictionary
-    	URL url = new URL ("file", null , wnPath);
-		dict = new Dictionary(url);
-		dict.open();
+    	rules = RuleSet.getShared();
+    	
+    	if (indexedMatching){
+    		TreeIndex.checkRules(rules);
+    	}
+    	
+    	//Get the WordNet lexicon, loaded only by the first parser created
+    	lexicon = WordNetLexicon.getShared(wnPath, wnInMemory, wnPreload, image.keys(LexiconImage.NO_PLURAL), 
+    			image.entries(LexiconImage.PLURAL_EXCEPTIONS));
+    	
+    	synchronized (DefinitionParser.class){
+    		if (entryCache == null){
+    			entryCache = new LookupCache<String, String>("WordNet entries", entryCacheSize);
+    			
+    			if (parseCacheFile.length() > 0){
+    				parseCache = new ParseCache(parseCacheFile);
+    			}
+    		}
+    	}
 	}
 	
-	//Load the plural exceptions list
-	private static final Map<String, String> plExceptions;
-		static {
-        Map<String, String> temp = new HashMap<String, String>();
-        
-        try{
-			BufferedReader br = new BufferedReader(new FileReader("data/pl_exc.txt"));
-			try{
-				String line = null;
-				
-				while ((line = br.readLine()) != null) {
-					String[] tokens = line.split(" ");
-					temp.put(tokens[0], tokens[1]);
-				}
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-		} catch (FileNotFoundException f){
-			f.printStackTrace();
-		}
-        plExceptions = Collections.unmodifiableMap(temp);
-    }
-	
-	//Load the non plural list
-	private static final List<String> notPlural;
+	//Load the compiled image of the plural exceptions, non plural and accessory determiners lists,
+	//compiling it again from the text lists if it is missing or out of date
+	private static final LexiconImage image;
+	private static final PrefixMatcher acc_det;
 	    static {
-	        List<String> temp = new ArrayList<String>();
-	        
-	        try{
-				BufferedReader br = new BufferedReader(new FileReader("data/no_pl.txt"));
-				try{
-					String line = null;
-					
-					while ((line = br.readLine()) != null) {
-						temp.add(line);
-					}
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
-			} catch (FileNotFoundException f){
-				f.printStackTrace();
-			}
-	        notPlural = Collections.unmodifiableList(temp);
+	    	LexiconImage temp = null;
+	    	
+	    	try{
+	    		if (!LexiconCompiler.isStale(LexiconCompiler.IMAGE_FILE)){
+	    			try{
+	    				temp = LexiconImage.open(LexiconCompiler.IMAGE_FILE);
+	    			} catch (IOException e){
+	    				//Truncated or damaged image: compiled again below
+	    				System.err.println(e.getMessage() + " (" + LexiconCompiler.IMAGE_FILE + "), compiling it again");
+	    			}
+	    		}
+	    		if (temp == null){
+	    			try{
+	    				temp = LexiconImage.wrap(LexiconCompiler.write(LexiconCompiler.IMAGE_FILE));
+	    			} catch (IOException e){
+	    				//The data folder may be read only: keep the image in memory
+	    				temp = LexiconImage.wrap(LexiconCompiler.compile());
+	    			}
+	    		}
+	    	} catch (IOException e){
+	    		e.printStackTrace();
+	    	}
+	    	image = temp;
+	    	acc_det = new PrefixMatcher(image.keys(LexiconImage.ACCESSORY_DETERMINERS));
 	    }
-
-	
-	//Load the accessory determiners list
-	private static final List<String> acc_det;
-    static {
-        List<String> temp = new ArrayList<String>();
-        
-        try{
-			BufferedReader br = new BufferedReader(new FileReader("data/acc_det.txt"));
-			try{
-				String line = null;
-				
-				while ((line = br.readLine()) != null) {
-					temp.add(line);
-				}
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-		} catch (FileNotFoundException f){
-			f.printStackTrace();
-		}
-        acc_det = Collections.unmodifiableList(temp);
+    
+    //Read the raw data file in the format id|POS|word_list|definition one definition at a time
+    public DefinitionReader openDataFile(String inputfile) throws IOException{
+    	return new DefinitionReader(inputfile);
     }
     
     //Read the raw data file in the format id|POS|word_list|definition
@@ -170,7 +204,7 @@ public class DefinitionParser {
 	//Check whether a word is plural
     public boolean isPlural (String word){
 		
-		if (!notPlural.contains(word.toLowerCase()) && (plExceptions.containsKey(word.toLowerCase()) || word.endsWith("s")))
+		if (!image.contains(LexiconImage.NO_PLURAL, word, true) && (image.contains(LexiconImage.PLURAL_EXCEPTIONS, word, true) || word.endsWith("s")))
 			return true;
 		else
 			return false;
@@ -182,8 +216,10 @@ public class DefinitionParser {
 		String singularForm = new String();
 		
 		if (isPlural(word) && word.length() > 2){
-			if (plExceptions.containsKey(word.toLowerCase())){
-				singularForm = plExceptions.get(word.toLowerCase());
+			String exception = image.get(LexiconImage.PLURAL_EXCEPTIONS, word, true);
+			
+			if (exception != null){
+				singularForm = exception;
 			}
 			else{
 				if (word.endsWith("us") || word.endsWith("ss")){
@@ -254,230 +290,393 @@ public class DefinitionParser {
     }
 	
 	//Look for the longest sequence of words in an expression that exists as an entry in WordNet
-    @SuppressWarnings("unused")
 	public String getLongestEntry(List<String> exp, String pos, boolean anypos){
 		
-		String longestEntry = new String();
-		int idx = 0;
-		boolean found = false;
+		//The key is the POS followed by the words, each one preceded by a separator that can't occur in them
+		StringBuilder key = new StringBuilder(pos);
+		for (String word : exp){
+			key.append('\n').append(word);
+		}
 		
-		while (idx < exp.size() && !found){
-			String entry = new String();
-			for (int i=idx; i < exp.size(); i++){
-				entry += exp.get(i) + " ";
-			}
-			entry = entry.trim().replaceAll(" ", "_");
-			
-			switch (pos){
-			case "n":
-				IIndexWord words = dict.getIndexWord(getSingular(entry), POS.NOUN);
-				try{	
-					IWord word = dict.getWord(words.getWordIDs().get(0));
-					longestEntry = entry;
-					found = true;
-				}
-				catch (NullPointerException npe){
-					idx++;
-				}
-				break;
-			case "v":
-				words = dict.getIndexWord(entry, POS.VERB);
-				try{
-					IWord word = dict.getWord(words.getWordIDs().get(0));
-					longestEntry = entry;
-					found = true;
-				}
-				catch (NullPointerException npe){
-					idx++;
-				}
-				break;
-			case "a":
-				words = dict.getIndexWord(entry, POS.ADJECTIVE);
-				try{
-					IWord word = dict.getWord(words.getWordIDs().get(0));
-					longestEntry = entry;
-					found = true;
-				}
-				catch (NullPointerException npe){
-					idx++;
-				}
-				break;
-			case "r":
-				words = dict.getIndexWord(entry, POS.ADVERB);
-				try{
-					IWord word = dict.getWord(words.getWordIDs().get(0));
-					longestEntry = entry;
-					found = true;
-					break;
-				}
-				catch (NullPointerException npe){
-					idx++;
-				}
-			case "null":
-				IIndexWord nouns = dict.getIndexWord(entry, POS.NOUN);
-				IIndexWord verbs = dict.getIndexWord(entry, POS.VERB);
-				IIndexWord adjs = dict.getIndexWord(entry, POS.ADJECTIVE);
-				IIndexWord advs = dict.getIndexWord(entry, POS.ADVERB);
-				try{
-					IWord word = dict.getWord(nouns.getWordIDs().get(0));
-					longestEntry = entry;
-					found = true;
-					break;
-				}
-				catch (NullPointerException npen){
-					try{
-						IWord word = dict.getWord(verbs.getWordIDs().get(0));
-						longestEntry = entry;
-						found = true;
-						break;
-					}
-					catch (NullPointerException npev){
-						try{
-							IWord word = dict.getWord(adjs.getWordIDs().get(0));
-							longestEntry = entry;
-							found = true;
-							break;
-						}
-						catch (NullPointerException npea){
-							try{
-								IWord word = dict.getWord(advs.getWordIDs().get(0));
-								longestEntry = entry;
-								found = true;
-								break;
-							}
-							catch (NullPointerException nper){
-								if (idx == exp.size()-1){
-									longestEntry = entry;
-									found = true;
-									break;
-								}
-								else{
-									idx++;
-								}
-							}
-						}
-					}
-				}
-			}
+		String cached = entryCache.get(key.toString());
+		
+		if (cached == null){
+			cached = findLongestEntry(exp, pos);
+			entryCache.put(key.toString(), cached);
 		}
-		return longestEntry;
+		return cached;
 	}
 	
-	//Return the accessory determiner that starts a definition, if any
-    public String getAccessoryDeterminer(String sentence){
+	private String findLongestEntry(List<String> exp, String pos){
 		
-		String accDet = "";
+		int idx = lexicon.longestSuffix(exp, getPOSMask(pos));
 		
-		for (int i=0; i < acc_det.size(); i++){
-			if (sentence.startsWith(acc_det.get(i))){
-				accDet = acc_det.get(i);
-				break;
+		if (idx < 0){
+			//With no POS restriction, the last word is taken as the entry
+			if (pos.equals("null") && exp.size() > 0){
+				idx = exp.size()-1;
+			}
+			else{
+				return "";
 			}
 		}
-		return accDet;
+		
+		String entry = new String();
+		for (int i=idx; i < exp.size(); i++){
+			entry += exp.get(i) + " ";
+		}
+		return entry.trim().replaceAll(" ", "_");
 	}
+    
+    //Map a POS code to the lexicon POS mask
+    private int getPOSMask(String pos){
+    	
+    	switch (pos){
+    	case "n":
+    		return LexiconTrie.NOUN;
+    	case "v":
+    		return LexiconTrie.VERB;
+    	case "a":
+    		return LexiconTrie.ADJECTIVE;
+    	case "r":
+    		return LexiconTrie.ADVERB;
+    	case "null":
+    		return LexiconTrie.ANY_POS;
+    	default:
+    		return 0;
+    	}
+    }
 	
-	//Return the syntactic parse tree of a piece of text
-    public List<Tree> parse (String text){
-	    
-		List<Tree> trees = new ArrayList<Tree>();
+	//Return the longest accessory determiner that starts a definition, if any
+    public String getAccessoryDeterminer(String sentence){
 		
-		Properties props = new Properties();
-	    props.setProperty("annotators", "tokenize, ssplit, pos, lemma, parse");
-	    RedwoodConfiguration.empty().capture(System.err).apply();
-	    StanfordCoreNLP pipeline = new StanfordCoreNLP(props);
-	    RedwoodConfiguration.current().clear().apply();
-	    
-	    Annotation document = new Annotation(text);
-	    pipeline.annotate(document);
-	    
-	    List<CoreMap> sentences = document.get(CoreAnnotations.SentencesAnnotation.class);
-	    
-	    //parse the sentence generating the parse trees
-	    for (CoreMap sentence : sentences){
-	    	Tree tree = sentence.get(TreeAnnotation.class);
-	    	trees.add(tree.deepCopy());
-	    }
-	    return trees;
+		return acc_det.longestPrefix(sentence);
 	}
+	
+	//Return the annotation of a piece of text, reusing the current one if the text is the same
+    public DefinitionContext annotate (String text){
+    	
+    	if (context == null || !context.getText().equals(text)){
+    		DefinitionContext ready = prefetched.remove(text);
+    		
+    		if (ready == null && parseCache != null){
+    			List<Tree> trees = parseCache.getTrees(text, DefinitionContext.ANNOTATORS);
+    			
+    			if (trees != null){
+    				ready = new DefinitionContext(text, trees);
+    			}
+    			else{
+    				ready = new DefinitionContext(text);
+    				parseCache.putTrees(text, DefinitionContext.ANNOTATORS, ready.getTrees());
+    			}
+    		}
+    		context = ready != null ? ready : new DefinitionContext(text);
+    		
+    		//The matches of the previous definition won't be asked for again
+    		matchMemo.clear();
+    	}
+    	return context;
+    }
+    
+    //Return the persistent parse cache, or null if it is disabled
+    public static ParseCache getParseCache(){
+    	return parseCache;
+    }
+    
+    //Return the folder of the WordNet files in use
+    public static String getWordNetPath(){
+    	return wnPath;
+    }
+    
+    //Return the engine matching the rules, "tregex" or "visitor"
+    public static String getMatchEngine(){
+    	return indexedMatching ? "visitor" : "tregex";
+    }
+    
+    //Return the NER model in use, which also identifies the named entity tags in the parse cache
+    public static String getNERModel(){
+    	return nerModel;
+    }
+    
+    //Annotate a batch of texts together, letting the pipeline tag and parse several of them at a time, and keep
+    //their annotations for the following calls to annotate; annotations of a previous batch not used yet are dropped
+    public void annotateBatch (List<String> texts, int numThreads){
+    	
+    	List<String> annotated = new ArrayList<String>();
+    	List<Annotation> documents = new ArrayList<Annotation>();
+    	prefetched.clear();
+    	
+    	for (String text : texts){
+    		List<Tree> trees = parseCache != null ? parseCache.getTrees(text, DefinitionContext.ANNOTATORS) : null;
+    		
+    		if (trees != null){
+    			prefetched.put(text, new DefinitionContext(text, trees));
+    		}
+    		else{
+    			annotated.add(text);
+    			documents.add(new Annotation(text));
+    		}
+    	}
+    	
+    	long start = System.currentTimeMillis();
+    	DefinitionContext.getPipeline().annotate(documents, numThreads);
+    	long time = Math.max(1, System.currentTimeMillis() - start);
+    	
+    	for (int i=0; i < annotated.size(); i++){
+    		DefinitionContext ready = new DefinitionContext(annotated.get(i), documents.get(i));
+    		prefetched.put(annotated.get(i), ready);
+    		
+    		if (parseCache != null){
+    			parseCache.putTrees(annotated.get(i), DefinitionContext.ANNOTATORS, ready.getTrees());
+    		}
+    	}
+    	
+    	System.out.println("Batch of " + texts.size() + " definitions (" + (texts.size() - annotated.size()) + " from the parse cache) annotated in " 
+    			+ time + " ms (" + (texts.size() * 1000L / time) + " definitions/s)");
+    }
+	
+	//Return the syntactic parse tree of a piece of text; the trees are shared with the definition's annotation
+	//and must not be modified
+    public List<Tree> parse (String text){
+    	
+	    return new ArrayList<Tree>(annotate(text).getTrees());
+	}
+    
+    //Return the pipeline for a given configuration, loading its models only the first time it is requested
+    public static StanfordCoreNLP getPipeline(Properties props){
+    	
+    	String key = getPipelineKey(props);
+    	StanfordCoreNLP pipeline = pipelines.get(key);
+    	
+    	if (pipeline == null){
+    		synchronized (pipelines){
+    			pipeline = pipelines.get(key);
+    			
+    			if (pipeline == null){
+    				long start = System.currentTimeMillis();
+    				
+    				RedwoodConfiguration.empty().capture(System.err).apply();
+    				pipeline = new StanfordCoreNLP(props);
+    				RedwoodConfiguration.current().clear().apply();
+    				
+    				pipelineLoadTimes.put(key, System.currentTimeMillis() - start);
+    				pipelineReuses.put(key, new AtomicInteger());
+    				pipelines.put(key, pipeline);
+    				return pipeline;
+    			}
+    		}
+    	}
+    	pipelineReuses.get(key).incrementAndGet();
+    	
+    	return pipeline;
+    }
+    
+    //Build the registry key of a pipeline configuration: the normalized annotator list followed by the other properties
+    private static String getPipelineKey(Properties props){
+    	
+    	String key = new String();
+    	
+    	for (String annotator : props.getProperty("annotators", "").split(",")){
+    		if (annotator.trim().length() > 0){
+    			key += annotator.trim() + ",";
+    		}
+    	}
+    	
+    	Map<String, String> others = new TreeMap<String, String>();
+    	for (String name : props.stringPropertyNames()){
+    		if (!name.equals("annotators")){
+    			others.put(name, props.getProperty(name));
+    		}
+    	}
+    	return key + others.toString();
+    }
+    
+    //Print the hit, miss and eviction counts of the WordNet entry and singular form caches, and the alignment counts
+    public static void printCacheStats(){
+    	
+    	aligner.printStats();
+    	MatchMemo.printStats();
+    	
+    	if (indexedMatching){
+    		TreeIndex.printStats();
+    	}
+    	
+    	if (entryCache != null){
+    		entryCache.printStats();
+    	}
+    	if (parseCache != null){
+    		parseCache.printStats();
+    	}
+    }
+    
+    //Print the load time and the number of reuses of every pipeline built so far
+    public static void printPipelineStats(){
+    	
+    	for (String key : pipelines.keySet()){
+    		System.out.println("Pipeline [" + key + "]: models loaded in " + pipelineLoadTimes.get(key) + " ms, reused " 
+    				+ pipelineReuses.get(key).get() + " times");
+    	}
+    }
+    
+    public RuleSet getRules(){
+    	return rules;
+    }
+    
+    //Returns the first subtree of a parse tree that matches a rule
+    public Tree getFirstTreeMatch (Rule rule, Tree parseTree){
+		
+    	return getFirstTreeMatch(rule, parseTree, null);
+    }
+    
+    //Returns the first subtree of a parse tree that matches a rule, where the nodes named "word" must contain the
+    //given word, counting the time taken by the rule
+    public Tree getFirstTreeMatch (Rule rule, Tree parseTree, String word){
+    	
+    	long start = System.nanoTime();
+    	Tree match = getFirstTreeMatch(rule.getExpression(), parseTree, word);
+    	
+    	rule.record(System.nanoTime() - start, match != null);
+    	return match;
+    }
+    
+    //Returns all the subtrees of a parse tree that match a rule
+    public List<Tree> getAllTreeMatches (Rule rule, Tree parseTree){
+		
+    	return getAllTreeMatches(rule, parseTree, null);
+    }
+    
+    //Returns all the subtrees of a parse tree that match a rule, where the nodes named "word" must contain the
+    //given word, counting the time taken by the rule
+    public List<Tree> getAllTreeMatches (Rule rule, Tree parseTree, String word){
+    	
+    	long start = System.nanoTime();
+    	List<Tree> matches = getAllTreeMatches(rule.getExpression(), parseTree, word);
+    	
+    	rule.record(System.nanoTime() - start, !matches.isEmpty());
+    	return matches;
+    }
+    
+    //Check whether a parse tree has the labels a rule requires, without searching it
+    public boolean canMatch (Rule rule, Tree parseTree){
+    	return rule.getPattern().canMatch(getLabelMask(parseTree));
+    }
     
     //Returns the first subtree of a parse tree that matches a given TRegex expression
     public Tree getFirstTreeMatch (String expression, Tree parseTree){
 		
-    	Tree match = null;
+    	return getFirstTreeMatch(expression, parseTree, null);
+    }
+    
+    //Returns the first subtree of a parse tree that matches a given TRegex expression, where the
+    //nodes named "word" (word, word1, word2...) must contain the given word
+    public Tree getFirstTreeMatch (String expression, Tree parseTree, String word){
+		
+    	PatternRegistry pattern = PatternRegistry.get(expression);
+    	pattern.checkWord(word);
     	
-    	TregexPattern pattern = TregexPattern.compile(expression);
-		TregexMatcher matcher = pattern.matcher(parseTree);
-	
-		if (matcher.findNextMatchingNode()){
-			match = matcher.getMatch();
-		}
-		return match;
+    	if (!pattern.canMatch(getLabelMask(parseTree))){
+    		return null;
+    	}
+    	
+    	List<Tree> memo = matchMemo.get(pattern, word, parseTree, false);
+    	
+    	if (memo != null){
+    		return memo.isEmpty() ? null : memo.get(0);
+    	}
+    	
+    	TreeIndex index = getTreeIndex(expression, parseTree);
+    	Tree match = index != null ? index.firstMatch(expression, parseTree, word) : pattern.firstMatch(parseTree, word);
+    	
+    	matchMemo.put(pattern, word, parseTree, false, match == null ? Collections.<Tree>emptyList() : Collections.singletonList(match));
+    	return match;
+    }
+    
+    //Return the mask of the labels in a parse tree node, with every label if the node doesn't belong to the
+    //definition last parsed
+    private long getLabelMask (Tree parseTree){
+    	
+    	CompactTree compact = context != null ? context.getCompactTree(parseTree) : null;
+    	
+    	return compact != null ? compact.getLabelMask(compact.getNode(parseTree)) : -1L;
+    }
+    
+    //Return the index to match an expression against, indexing the tree the first time one of its subtrees is
+    //searched, or null if the expression is matched by TRegex
+    private TreeIndex getTreeIndex (String expression, Tree parseTree){
+    	
+    	if (!indexedMatching || !TreeIndex.supports(expression)){
+    		return null;
+    	}
+    	if (treeIndex == null || !treeIndex.contains(parseTree)){
+    		treeIndex = new TreeIndex(parseTree);
+    	}
+    	return treeIndex;
     }
     
     //Returns all the subtrees of a parse tree that match a given TRegex expression
     public List<Tree> getAllTreeMatches (String expression, Tree parseTree){
 		
-    	List<Tree> matches = new ArrayList<Tree>();
+    	return getAllTreeMatches(expression, parseTree, null);
+    }
+    
+    //Returns all the subtrees of a parse tree that match a given TRegex expression, where the
+    //nodes named "word" (word, word1, word2...) must contain the given word
+    public List<Tree> getAllTreeMatches (String expression, Tree parseTree, String word){
+		
+    	PatternRegistry pattern = PatternRegistry.get(expression);
+    	pattern.checkWord(word);
     	
-    	TregexPattern pattern = TregexPattern.compile(expression);
-		TregexMatcher matcher = pattern.matcher(parseTree);
-	
-		while (matcher.findNextMatchingNode()){
-			matches.add(matcher.getMatch().deepCopy());
-		}
+    	if (!pattern.canMatch(getLabelMask(parseTree))){
+    		return new ArrayList<Tree>();
+    	}
+    	
+    	List<Tree> matches = matchMemo.get(pattern, word, parseTree, true);
+    	
+    	if (matches == null){
+    		TreeIndex index = getTreeIndex(expression, parseTree);
+    		
+    		matches = Collections.unmodifiableList(index != null ? index.allMatches(expression, parseTree, word) 
+    				: pattern.allMatches(parseTree, word));
+    		matchMemo.put(pattern, word, parseTree, true, matches);
+    	}
 		return matches;
     }
     
-    //Return the named entities in a piece of text
-    @SuppressWarnings("unchecked")
-	public Map<String, Vector<String>> getNamedEntities (String text){
-    	
-    	Map<String, Vector<String>> nerMap = new HashMap<String, Vector<String>>();
+    //Return the named entity index of the definition last parsed, whose tokens are given by the offsets
+    public EntityIndex getEntityIndex (TokenOffsets offsets){
+    	return new EntityIndex(context, offsets);
+    }
+    
+    //Return the NER classifier, deserializing the model only the first time it is requested
+    public static CRFClassifier<CoreLabel> getNERClassifier(){
     	
-    	String serializedClassifier = "edu/stanford/nlp/models/ner/english.muc.7class.distsim.crf.ser.gz";
-    	RedwoodConfiguration.empty().capture(System.err).apply();
-    	CRFClassifier<CoreLabel> classifier = CRFClassifier.getClassifierNoExceptions(serializedClassifier);
-    	RedwoodConfiguration.current().clear().apply();
-    	List<List<CoreLabel>> classification = classifier.classify(text);
+    	CRFClassifier<CoreLabel> classifier = nerClassifier;
     	
-    	for (List<CoreLabel> coreLabels : classification){
-    		for (CoreLabel coreLabel : coreLabels){
-    			String word = coreLabel.word();
-    			String category = coreLabel.get(CoreAnnotations.AnswerAnnotation.class);
+    	if (classifier == null){
+    		synchronized (DefinitionParser.class){
+    			classifier = nerClassifier;
     			
-    			if(!category.equals("O")){
-    				Vector<String> values = new Vector<String>();
-    				if (nerMap.containsKey(category)){
-    					values = nerMap.get(category);
-    				}
-    				values.add(word);
-					nerMap.put(category, (Vector<String>)values.clone());
-					values.clear();
+    			if (classifier == null){
+    				long start = System.currentTimeMillis();
+    				
+    				RedwoodConfiguration.empty().capture(System.err).apply();
+    				classifier = CRFClassifier.getClassifierNoExceptions(nerModel);
+    				RedwoodConfiguration.current().clear().apply();
+    				
+    				System.out.println("NER model " + nerModel + " loaded in " + (System.currentTimeMillis() - start) + " ms");
+    				nerClassifier = classifier;
     			}
     		}
     	}
-    	return nerMap;
+    	return classifier;
     }
     
     //Return the basic dependencies for a word in a sentence, where this word is the dependent term
     public List<String> getDependencies(String text, String word){
     	
     	List<String> pairs = new ArrayList<String>();
-    	
-    	Properties props = new Properties();
-	    props.setProperty("annotators", "tokenize, ssplit, pos, lemma, depparse");
-	    RedwoodConfiguration.empty().capture(System.err).apply();
-	    StanfordCoreNLP pipeline = new StanfordCoreNLP(props);
-    	RedwoodConfiguration.current().clear().apply();
-	    
-	    Annotation document = new Annotation(text);
-	    pipeline.annotate(document);
-	    
-	    List<CoreMap> sentences = document.get(CoreAnnotations.SentencesAnnotation.class);
 	    
-	    for (CoreMap sentence : sentences){
-	    	SemanticGraph dependencies = sentence.get(SemanticGraphCoreAnnotations.BasicDependenciesAnnotation.class);
+	    for (SemanticGraph dependencies : annotate(text).getDependencies()){
 	    	IndexedWord node = dependencies.getNodeByWordPattern(word);
 	    	List<SemanticGraphEdge> edges = dependencies.incomingEdgeList(node);
 	    	
@@ -490,6 +689,18 @@ public class DefinitionParser {
     	return pairs;
     }
 	
+	//Return the words at the leaves of a parse tree node, as a read-only view of the definition's tokens when the
+	//node belongs to the definition last parsed
+    public List<String> getWords(Tree tree){
+    	
+    	CompactTree compact = context != null ? context.getCompactTree(tree) : null;
+    	
+    	if (compact != null){
+    		return compact.getWords(tree);
+    	}
+    	return getWordList(tree.yieldWords());
+    }
+    
 	//Convert the harvest of a parse tree (word elements at the leaves) to a list of strings
     public List<String> getWordList(List<Word> tree){
 		
@@ -512,163 +723,18 @@ public class DefinitionParser {
     	return newExp;
     }
     
-    //Sort the roles by their fragments' indexes and fill out missing fragments
-    public List<String> sort(String text, List<String> roles){
-    	
-    	List<String> sorted = new ArrayList<String>();
-    	Map<Integer, String> temp = new HashMap<Integer, String>();
-    	String[] words = text.split(" ");
-    	
-    	try{
-	    	for (String entry : roles){
-	    		int index = Integer.parseInt(entry.split("\\|")[0]);
-	    		String fragment = entry.split("\\|")[1];
-	    		String role = entry.split("\\|")[2];
-	    		
-	    		if(! temp.containsKey(index)){
-	    			temp.put(index, fragment + ":" + role);
-	    		}
-	    	}
-	    	
-	    	String filler = "";
-	    	String firstRole = "";
-	    	String fragment = "";
-	    	
-	    	int pointer = 1;
-	    	int fragLength = 0;
-	    	int nextIndex = 0;
-	    	int wordsAdded = 0;
-	    	
-	    	if (temp.containsKey(0) && temp.get(0).split(":")[0].split(" ").length == words.length && roles.size() > 1){
-	    		temp.remove(0);
-	    	}
-	    	
-	    	if (temp.containsKey(0)){
-	    		sorted.add(temp.get(0));
-	    		
-	    		firstRole = temp.get(0).split(":")[1];
-	        	fragment = temp.get(0).split(":")[0];
-	        	
-	        	fragLength = fragment.length();
-	        	nextIndex = fragLength + 1;
-	        	wordsAdded = fragment.split(" ").length;
-	    	}
-	    	else{
-	    		pointer = 0;
-	    		while(!temp.containsKey(nextIndex) && wordsAdded < words.length){
-					filler += words[wordsAdded] + " ";
-					fragLength = words[wordsAdded].length();
-					nextIndex += fragLength + 1;
-					wordsAdded++;
-					
-					if (wordsAdded == words.length){
-						pointer = roles.size();
-					}
-				}
-	    		sorted.add(filler.trim() + ":0");
-				filler = "";
-	    	}
-	    	
-	    	if (firstRole.equals("accessory determiner")){
-	    		if(temp.containsKey(1)){
-	    			if (temp.get(1).split(":")[0].split(" ").length == (words.length-wordsAdded) && roles.size() > 2){
-	    	    		temp.remove(1);
-	    	    		nextIndex = 1;
-	    	    	}
-	    			else{
-			    		sorted.add(temp.get(1));
-			    		fragment = temp.get(1).split(":")[0];
-			    		fragLength = fragment.length();
-			    		wordsAdded += fragment.split(" ").length;
-			    		nextIndex = 2 + fragLength;
-			    		pointer = 2;
-	    			}	
-	    		}
-	    		else{
-	    			nextIndex = 1;
-	    		}	
-	    	}
-	    	
-	    	if(!temp.containsKey(0) && pointer == 1 && roles.size() == 1){
-	    		pointer = 0;
-	    	}
-	    	
-	    	while (pointer < roles.size()){
-	    		if (temp.containsKey(nextIndex)){
-	    			sorted.add(temp.get(nextIndex));    				
-	    			fragment = temp.get(nextIndex).split(":")[0];
-	    			fragLength = fragment.length();
-	    			wordsAdded += fragment.split(" ").length;
-	    			nextIndex += fragLength + 1;
-	    			
-	    			if (wordsAdded == words.length){
-						pointer = roles.size();
-					}
-	    			else{
-	    				pointer++;
-	    			}
-	    		}
-	    		else{
-	    			while(!temp.containsKey(nextIndex) && wordsAdded < words.length){    				
-	    				filler += words[wordsAdded] + " ";
-	    				fragLength = words[wordsAdded].length();
-	    				nextIndex += fragLength + 1;
-	    				wordsAdded++;
-	    				
-	    				if (wordsAdded == words.length){
-	    					pointer = roles.size();
-	    				}
-	    			}
-	    			sorted.add(filler.trim() + ":0");
-	    			filler = "";
-	    		}
-	    	}
-	    	
-	    	if(wordsAdded < words.length){
-				for (int i=wordsAdded; i < words.length; i++){
-					filler += words[i] + " ";
-				}
-				sorted.add(filler.trim() + ":0");
-				filler = "";
-			}
-    	}
-    	catch (Exception e){
-    		//If some error prevented proper sorting, skip definition
-    		sorted.add(text + ":0");
-    	}
-    	return sorted;
+    //Sort the roles by their first tokens and fill out missing fragments
+    public List<RoleSpan> sort(TokenOffsets offsets, List<RoleSpan> roles){
+    	return aligner.align(offsets, roles);
     }
     
     //Write the data in IOB format to a text file
-    public void IOBPrint(List<List<String>> defs, String outputfile){
-    	
-    	List<String> records = new ArrayList<String>();
-    	
-    	for(List<String> def : defs){
-    		records.add("BOS O\n");
-    		for(String role : def){
-    			String[] text = role.split(":")[0].split(" ");
-    			String label = role.split(":")[1].replaceAll(" ", "-");
-    			
-    			if (label.equals("0")){
-    				for (int i=0; i < text.length; i++){
-    					records.add(text[i] + " O\n");
-    				}
-    			}
-    			else{
-    				records.add(text[0] + " B-" + label + "\n");
-    				for (int i=1; i < text.length; i++){
-    					records.add(text[i] + " I-" + label + "\n"); 
-    				}
-    			}
-    		}
-    		records.add("EOS O\n\n");
-    	}
+    public void IOBPrint(List<List<RoleSpan>> defs, String outputfile){
     	
     	try {
-	        FileWriter writer = new FileWriter(outputfile);
-	        for (String record: records) {
-	            writer.write(record);
+	        Writer writer = new BufferedWriter(new FileWriter(outputfile));
+	        for (List<RoleSpan> def : defs) {
+	            writer.write(toIOB(def));
 	        }
 	        writer.flush();
 	        writer.close();
@@ -677,5 +743,31 @@ public class DefinitionParser {
 		}
     	System.out.println("Classified definitions saved in the output folder.");
     }
+    
+    //Return the IOB records of a classified definition, one per word, between the BOS and EOS markers
+    public String toIOB(List<RoleSpan> def){
+    	
+    	StringBuilder records = new StringBuilder("BOS O\n");
+    	
+    	for(RoleSpan role : def){
+    		String[] text = role.getText().split(" ");
+    		String label = role.getRole().getLabel("-");
+    		
+    		if (role.getRole() == Role.NONE){
+    			for (int i=0; i < text.length; i++){
+    				records.append(text[i] + " O\n");
+    			}
+    		}
+    		else{
+    			records.append(text[0] + " B-" + label + "\n");
+    			for (int i=1; i < text.length; i++){
+    				records.append(text[i] + " I-" + label + "\n"); 
+    			}
+    		}
+    	}
+    	records.append("EOS O\n\n");
+    	
+    	return records.toString();
+    }
 
 }
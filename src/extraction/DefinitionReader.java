@@ -0,0 +1,85 @@
+/****************************************************************/
+/* Class DefinitionReader                                       */
+/* Reads the raw data file one definition at a time, so that    */
+/* the whole file is never held in memory                       */
+/*                                                              */
+/* Author: Vivian Silva                                         */
+/****************************************************************/
+
+package extraction;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class DefinitionReader implements Iterator<DefinitionRecord> {
+
+	private final BufferedReader br;
+	private String next;
+
+	public DefinitionReader(String inputfile) throws IOException{
+
+		br = new BufferedReader(new FileReader(inputfile));
+		advance();
+	}
+
+	private void advance() throws IOException{
+
+		next = br.readLine();
+
+		if (next == null){
+			br.close();
+		}
+	}
+
+	public boolean hasNext(){
+		return next != null;
+	}
+
+	public DefinitionRecord next(){
+
+		if (next == null){
+			throw new NoSuchElementException();
+		}
+
+		DefinitionRecord record = new DefinitionRecord(next);
+		try{
+			advance();
+		}
+		catch (IOException e){
+			e.printStackTrace();
+			next = null;
+		}
+		return record;
+	}
+
+	//Skip a number of definitions, returning how many were actually skipped
+	public int skip(int count){
+
+		int skipped = 0;
+
+		try{
+			while (skipped < count && next != null){
+				advance();
+				skipped++;
+			}
+		}
+		catch (IOException e){
+			e.printStackTrace();
+			next = null;
+		}
+		return skipped;
+	}
+
+	public void close(){
+
+		try{
+			br.close();
+		}
+		catch (IOException e){
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,43 @@
+/****************************************************************/
+/* Class DefinitionRecord                                       */
+/* A line of the raw data file, in the format                   */
+/* id|POS|word_list|definition                                  */
+/*                                                              */
+/* Author: Vivian Silva                                         */
+/****************************************************************/
+
+package extraction;
+
+public class DefinitionRecord {
+
+	private final String id;
+	private final String pos;
+	private final String words;
+	private final String gloss;
+
+	public DefinitionRecord(String line){
+
+		String[] tokens = line.split("\\|");
+
+		id = tokens[0];
+		pos = tokens[1];
+		words = tokens[2];
+		gloss = tokens[3];
+	}
+
+	public String getId(){
+		return id;
+	}
+
+	public String getPOS(){
+		return pos;
+	}
+
+	public String getWords(){
+		return words;
+	}
+
+	public String getGloss(){
+		return gloss;
+	}
+}
@@ -0,0 +1,186 @@
+/****************************************************************/
+/* Class EntityIndex                                            */
+/* Named entities of a definition, tagged once over the whole   */
+/* definition and kept as spans of its tokens                   */
+/*                                                              */
+/* Author: Vivian Silva                                         */
+/****************************************************************/
+
+package extraction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+
+public class EntityIndex {
+
+	//Entity types the rules ask for; other tags are ignored
+	public static final List<String> TYPES = Arrays.asList("LOCATION", "DATE", "TIME");
+
+	private final DefinitionContext context;
+	private final TokenOffsets offsets;
+
+	//Words of the parse and the definition token each one is part of, or -1 if it couldn't be aligned
+	private List<String> words;
+	private int[] tokens;
+	private List<EntitySpan> entities;
+
+	//An entity: parse tokens [first, last) with the same tag, covering definition tokens [start, end)
+	private static class EntitySpan {
+
+		private final String type;
+		private final int first;
+		private final int last;
+		private final int start;
+		private final int end;
+
+		private EntitySpan(String type, int first, int last, int start, int end){
+
+			this.type = type;
+			this.first = first;
+			this.last = last;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	//The parse of the context is aligned to the definition tokens of the offsets; nothing is tagged until the
+	//first query
+	public EntityIndex(DefinitionContext context, TokenOffsets offsets){
+
+		this.context = context;
+		this.offsets = offsets;
+	}
+
+	//Align the words of the parse to the definition tokens
+	private void align(){
+
+		words = context.getWords();
+		tokens = new int[words.size()];
+
+		String text = offsets.getText();
+		int position = offsets.getOrigin();
+
+		for (int i=0; i < words.size(); i++){
+			int found = text.indexOf(words.get(i), position);
+
+			if (found >= 0){
+				tokens[i] = offsets.tokenAt(found);
+				position = found + words.get(i).length();
+			}
+			else{
+				tokens[i] = -1;
+			}
+		}
+	}
+
+	//Tag the whole definition and build the entity spans
+	private void build(){
+
+		if (tokens == null){
+			align();
+		}
+
+		List<String> tags = context.getNERTags();
+		entities = new ArrayList<EntitySpan>();
+
+		int i = 0;
+		while (i < words.size()){
+			String type = tags.get(i);
+			int first = i;
+
+			while (i < words.size() && tags.get(i).equals(type)){
+				i++;
+			}
+
+			if (TYPES.contains(type)){
+				int start = Integer.MAX_VALUE;
+				int end = -1;
+
+				for (int j=first; j < i; j++){
+					if (tokens[j] >= 0){
+						start = Math.min(start, tokens[j]);
+						end = Math.max(end, tokens[j] + 1);
+					}
+				}
+
+				if (end > 0){
+					entities.add(new EntitySpan(type, first, i, start, end));
+				}
+			}
+		}
+	}
+
+	//Return the definition tokens [start, end) of a fragment built from parse tree words, or null if it isn't
+	//part of the definition
+	public int[] locate(String fragment){
+
+		int[] range = context.findTokens(fragment);
+
+		if (range == null){
+			return null;
+		}
+		if (tokens == null){
+			align();
+		}
+
+		int start = Integer.MAX_VALUE;
+		int end = -1;
+
+		for (int i=range[0]; i < range[1]; i++){
+			if (tokens[i] >= 0){
+				start = Math.min(start, tokens[i]);
+				end = Math.max(end, tokens[i] + 1);
+			}
+		}
+		return end > 0 ? new int[]{start, end} : null;
+	}
+
+	//Whether definition tokens [start, end) overlap an entity of a type
+	public boolean overlaps(int start, int end, String type){
+
+		if (entities == null){
+			build();
+		}
+
+		for (EntitySpan entity : entities){
+			if (entity.type.equals(type) && entity.start < end && start < entity.end){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public boolean overlaps(int[] range, String type){
+		return range != null && overlaps(range[0], range[1], type);
+	}
+
+	public boolean overlaps(RoleSpan span, String type){
+		return span != null && overlaps(span.getStartToken(), span.getEndToken(), type);
+	}
+
+	//Return the words tagged with a type within definition tokens [start, end)
+	public Vector<String> getWords(int[] range, String type){
+
+		Vector<String> found = new Vector<String>();
+
+		if (range == null){
+			return found;
+		}
+		if (entities == null){
+			build();
+		}
+
+		for (EntitySpan entity : entities){
+			if (entity.type.equals(type) && entity.start < range[1] && range[0] < entity.end){
+				for (int i=entity.first; i < entity.last; i++){
+					if (tokens[i] >= range[0] && tokens[i] < range[1]){
+						found.add(words.get(i));
+					}
+				}
+			}
+		}
+		return found;
+	}
+}
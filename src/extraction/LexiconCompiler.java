@@ -0,0 +1,229 @@
+/****************************************************************/
+/* Class LexiconCompiler                                        */
+/* Compile the resource lists (non plurals, plural exceptions   */
+/* and accessory determiners) into a binary lexicon image       */
+/*                                                              */
+/* Author: Vivian Silva                                         */
+/****************************************************************/
+
+package extraction;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+public class LexiconCompiler {
+
+	public static final String NO_PLURAL_FILE = "data/no_pl.txt";
+	public static final String PLURAL_EXCEPTIONS_FILE = "data/pl_exc.txt";
+	public static final String ACCESSORY_DETERMINERS_FILE = "data/acc_det.txt";
+	public static final String IMAGE_FILE = "data/lexicon.bin";
+
+	//Check whether the image is missing or older than any of the lists it is compiled from
+	public static boolean isStale(String imagefile){
+
+		File image = new File(imagefile);
+
+		if (!image.exists()){
+			return true;
+		}
+		for (String list : new String[]{NO_PLURAL_FILE, PLURAL_EXCEPTIONS_FILE, ACCESSORY_DETERMINERS_FILE}){
+			if (new File(list).lastModified() > image.lastModified()){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	//Read the resource lists and compile them into an image
+	public static byte[] compile() throws IOException{
+
+		Map<String, String> plExceptions = new LinkedHashMap<String, String>();
+
+		for (String line : readLines(PLURAL_EXCEPTIONS_FILE)){
+			String[] tokens = line.split(" ");
+			plExceptions.put(tokens[0], tokens[1]);
+		}
+		return compile(readLines(NO_PLURAL_FILE), plExceptions, readLines(ACCESSORY_DETERMINERS_FILE));
+	}
+
+	//Compile the lists into an image; the accessory determiners keep their order, as they are tried in sequence
+	public static byte[] compile(List<String> notPlural, Map<String, String> plExceptions, List<String> accDet) throws IOException{
+
+		List<byte[]> sections = new ArrayList<byte[]>();
+
+		sections.add(compileSection(notPlural, null));
+		sections.add(compileSection(new ArrayList<String>(plExceptions.keySet()), plExceptions));
+		sections.add(compileSection(accDet, null));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		int length = LexiconImage.HEADER;
+		CRC32 crc = new CRC32();
+		for (byte[] section : sections){
+			length += section.length;
+			crc.update(section);
+		}
+
+		out.writeInt(LexiconImage.MAGIC);
+		out.writeInt(LexiconImage.VERSION);
+		out.writeInt(LexiconImage.SECTIONS);
+		out.writeInt(length);
+		out.writeInt((int) crc.getValue());
+
+		int offset = LexiconImage.HEADER;
+		for (byte[] section : sections){
+			out.writeInt(offset);
+			offset += section.length;
+		}
+		for (byte[] section : sections){
+			out.write(section);
+		}
+		out.flush();
+
+		return bytes.toByteArray();
+	}
+
+	//Build an open addressing table (linear probing, load factor at most 1/2) over the keys of a section;
+	//values is null for set sections
+	private static byte[] compileSection(List<String> keys, Map<String, String> values) throws IOException{
+
+		//Repeated keys are stored once
+		Map<String, Boolean> seen = new LinkedHashMap<String, Boolean>();
+		for (String key : keys){
+			seen.put(key, Boolean.TRUE);
+		}
+		List<String> unique = new ArrayList<String>(seen.keySet());
+
+		int capacity = 2;
+		while (capacity < 2*unique.size()){
+			capacity <<= 1;
+		}
+
+		int[] slots = new int[capacity];
+		int[] order = new int[unique.size()];
+		ByteArrayOutputStream records = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(records);
+		int recordsStart = 8 + 4*capacity + 4*unique.size();
+
+		for (int i=0; i < unique.size(); i++){
+			String key = unique.get(i);
+			int hash = LexiconImage.hash(key, false);
+			int record = recordsStart + out.size();
+
+			out.writeInt(hash);
+			writeString(out, key);
+			if (values == null){
+				out.writeInt(-1);
+			}
+			else{
+				writeString(out, values.get(key));
+			}
+
+			int slot = hash & (capacity-1);
+			while (slots[slot] != 0){
+				slot = (slot + 1) & (capacity-1);
+			}
+			slots[slot] = record;
+			order[i] = record;
+		}
+		out.flush();
+
+		ByteArrayOutputStream section = new ByteArrayOutputStream();
+		DataOutputStream sectionOut = new DataOutputStream(section);
+
+		sectionOut.writeInt(unique.size());
+		sectionOut.writeInt(capacity);
+		for (int slot : slots){
+			sectionOut.writeInt(slot);
+		}
+		for (int record : order){
+			sectionOut.writeInt(record);
+		}
+		sectionOut.write(records.toByteArray());
+		sectionOut.flush();
+
+		return section.toByteArray();
+	}
+
+	//Write the length and the UTF-8 bytes of a string, encoded as LexiconImage reads them
+	private static void writeString(DataOutputStream out, String s) throws IOException{
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		for (int i=0; i < s.length(); ){
+			int cp = Character.codePointAt(s, i);
+			i += Character.charCount(cp);
+
+			int n = LexiconImage.utf8Length(cp);
+			for (int b=0; b < n; b++){
+				bytes.write(LexiconImage.utf8Byte(cp, n, b));
+			}
+		}
+		out.writeInt(bytes.size());
+		bytes.writeTo(out);
+	}
+
+	private static List<String> readLines(String inputfile){
+
+		List<String> lines = new ArrayList<String>();
+
+		try{
+			BufferedReader br = new BufferedReader(new FileReader(inputfile));
+			try{
+				String line = null;
+
+				while ((line = br.readLine()) != null) {
+					lines.add(line);
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		} catch (FileNotFoundException f){
+			f.printStackTrace();
+		}
+		return lines;
+	}
+
+	//Compile the image and write it to a file, through a temporary file moved over it once complete so that a
+	//crash never leaves a partial image with a newer date than the lists
+	public static byte[] write(String imagefile) throws IOException{
+
+		byte[] image = compile();
+		File temp = new File(imagefile + ".tmp");
+		FileOutputStream out = new FileOutputStream(temp);
+
+		try{
+			out.write(image);
+			out.getFD().sync();
+		}
+		finally{
+			out.close();
+		}
+		Files.move(temp.toPath(), new File(imagefile).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return image;
+	}
+
+	public static void main(String[] args) throws IOException{
+
+		String imagefile = args.length > 0 ? args[0] : IMAGE_FILE;
+		long start = System.currentTimeMillis();
+		byte[] image = write(imagefile);
+
+		System.out.println("Lexicon image " + imagefile + " written in " + (System.currentTimeMillis() - start) + " ms ("
+				+ image.length + " bytes)");
+	}
+}
@@ -0,0 +1,236 @@
+/****************************************************************/
+/* Class LexiconImage                                           */
+/* Read-only view over the compiled image of the resource lists */
+/* (non plurals, plural exceptions and accessory determiners)   */
+/*                                                              */
+/* Author: Vivian Silva                                         */
+/****************************************************************/
+
+package extraction;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+public class LexiconImage {
+
+	public static final int MAGIC = 0x44524C58;
+	public static final int VERSION = 2;
+
+	//Sections of the image, in file order
+	public static final int NO_PLURAL = 0;
+	public static final int PLURAL_EXCEPTIONS = 1;
+	public static final int ACCESSORY_DETERMINERS = 2;
+	public static final int SECTIONS = 3;
+
+	//Size of the header, where the sections start
+	public static final int HEADER = 20 + 4*SECTIONS;
+
+	//Image layout (big endian ints):
+	//  header:  MAGIC, VERSION, number of sections, length of the image, CRC32 of the bytes after the header,
+	//           offset of each section
+	//  section: number of entries n, table capacity c (a power of 2), c slots holding the offset of a record
+	//           relative to the section (0 = empty), n record offsets in insertion order, the records
+	//  record:  hash, key length, key UTF-8 bytes, value length (-1 for set entries), value UTF-8 bytes
+	private final ByteBuffer image;
+	private final int[] sections;
+
+	private LexiconImage(ByteBuffer image) throws IOException{
+
+		this.image = image;
+
+		if (image.capacity() < HEADER || image.getInt(0) != MAGIC || image.getInt(4) != VERSION || image.getInt(8) != SECTIONS){
+			throw new IOException("Not a lexicon image of version " + VERSION);
+		}
+		//A truncated or damaged image is rejected here rather than read out of bounds later
+		if (image.getInt(12) != image.capacity()){
+			throw new IOException("Incomplete lexicon image: " + image.capacity() + " bytes, " + image.getInt(12) + " expected");
+		}
+		CRC32 crc = new CRC32();
+		ByteBuffer body = image.duplicate();
+		body.position(HEADER);
+		crc.update(body);
+		if ((int) crc.getValue() != image.getInt(16)){
+			throw new IOException("Damaged lexicon image: checksum mismatch");
+		}
+
+		sections = new int[SECTIONS];
+		for (int i=0; i < SECTIONS; i++){
+			sections[i] = image.getInt(20 + 4*i);
+
+			if (sections[i] < HEADER || sections[i] > image.capacity() - 8){
+				throw new IOException("Damaged lexicon image: section " + i + " at offset " + sections[i]);
+			}
+		}
+	}
+
+	//Map an image file into memory
+	public static LexiconImage open(String imagefile) throws IOException{
+
+		RandomAccessFile file = new RandomAccessFile(imagefile, "r");
+		try{
+			FileChannel channel = file.getChannel();
+			return new LexiconImage(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+		finally{
+			file.close();
+		}
+	}
+
+	//Read an image already in memory
+	public static LexiconImage wrap(byte[] bytes) throws IOException{
+		return new LexiconImage(ByteBuffer.wrap(bytes));
+	}
+
+	//Check whether a section has a key, optionally lower casing the key as it is read
+	public boolean contains(int section, CharSequence key, boolean lowerCase){
+		return find(section, key, lowerCase) != 0;
+	}
+
+	//Return the value of a key in a map section, or null
+	public String get(int section, CharSequence key, boolean lowerCase){
+
+		int record = find(section, key, lowerCase);
+
+		if (record == 0){
+			return null;
+		}
+		int base = sections[section];
+		int keyLen = image.getInt(base + record + 4);
+		return readString(base + record + 8 + keyLen);
+	}
+
+	//Return the keys of a section, in the order they were compiled
+	public List<String> keys(int section){
+
+		int base = sections[section];
+		int count = image.getInt(base);
+		int order = base + 8 + 4*image.getInt(base + 4);
+		List<String> keys = new ArrayList<String>(count);
+
+		for (int i=0; i < count; i++){
+			keys.add(readString(base + image.getInt(order + 4*i) + 4));
+		}
+		return keys;
+	}
+
+	//Return the entries of a map section, in the order they were compiled
+	public Map<String, String> entries(int section){
+
+		int base = sections[section];
+		int count = image.getInt(base);
+		int order = base + 8 + 4*image.getInt(base + 4);
+		Map<String, String> entries = new LinkedHashMap<String, String>();
+
+		for (int i=0; i < count; i++){
+			int record = base + image.getInt(order + 4*i);
+			int keyLen = image.getInt(record + 4);
+			entries.put(readString(record + 4), readString(record + 8 + keyLen));
+		}
+		return entries;
+	}
+
+	//Open addressing lookup with linear probing; returns the record offset relative to the section, or 0
+	private int find(int section, CharSequence key, boolean lowerCase){
+
+		int base = sections[section];
+		int mask = image.getInt(base + 4) - 1;
+		int hash = hash(key, lowerCase);
+
+		for (int slot = hash & mask; ; slot = (slot + 1) & mask){
+			int record = image.getInt(base + 8 + 4*slot);
+
+			if (record == 0){
+				return 0;
+			}
+			if (image.getInt(base + record) == hash && equals(base + record + 4, key, lowerCase)){
+				return record;
+			}
+		}
+	}
+
+	//Compare the UTF-8 bytes of a key with the ones stored at a position, encoding the key as it is read
+	private boolean equals(int position, CharSequence key, boolean lowerCase){
+
+		int length = image.getInt(position);
+		int p = position + 4;
+		int end = p + length;
+
+		for (int i=0; i < key.length(); ){
+			int cp = Character.codePointAt(key, i);
+			i += Character.charCount(cp);
+
+			if (lowerCase){
+				cp = Character.toLowerCase(cp);
+			}
+
+			int n = utf8Length(cp);
+			if (p + n > end){
+				return false;
+			}
+			for (int b=0; b < n; b++){
+				if (image.get(p++) != utf8Byte(cp, n, b)){
+					return false;
+				}
+			}
+		}
+		return p == end;
+	}
+
+	private String readString(int position){
+
+		int length = image.getInt(position);
+		byte[] bytes = new byte[length];
+
+		for (int i=0; i < length; i++){
+			bytes[i] = image.get(position + 4 + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	//FNV-1a hash of the UTF-8 bytes of a key
+	public static int hash(CharSequence key, boolean lowerCase){
+
+		int hash = 0x811C9DC5;
+
+		for (int i=0; i < key.length(); ){
+			int cp = Character.codePointAt(key, i);
+			i += Character.charCount(cp);
+
+			if (lowerCase){
+				cp = Character.toLowerCase(cp);
+			}
+
+			int n = utf8Length(cp);
+			for (int b=0; b < n; b++){
+				hash ^= utf8Byte(cp, n, b) & 0xFF;
+				hash *= 0x01000193;
+			}
+		}
+		return hash;
+	}
+
+	static int utf8Length(int cp){
+		return cp < 0x80 ? 1 : (cp < 0x800 ? 2 : (cp < 0x10000 ? 3 : 4));
+	}
+
+	//Return the b-th byte of the n-byte UTF-8 encoding of a code point
+	static byte utf8Byte(int cp, int n, int b){
+
+		if (n == 1){
+			return (byte) cp;
+		}
+		if (b == 0){
+			int lead = n == 2 ? 0xC0 : (n == 3 ? 0xE0 : 0xF0);
+			return (byte) (lead | (cp >> (6 * (n-1))));
+		}
+		return (byte) (0x80 | ((cp >> (6 * (n-1-b))) & 0x3F));
+	}
+}
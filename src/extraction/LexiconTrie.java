@@ -0,0 +1,288 @@
+/****************************************************************/
+/* Class LexiconTrie                                            */
+/* In-memory trie of the WordNet lemmas, used to find the       */
+/* longest entry at the end of an expression in a single walk   */
+/*                                                              */
+/* Author: Vivian Silva                                         */
+/****************************************************************/
+
+package extraction;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+public class LexiconTrie {
+
+	//Node flags: the POS of the lemmas ending at a node and the plural lists they belong to
+	public static final int NOUN = 1;
+	public static final int VERB = 2;
+	public static final int ADJECTIVE = 4;
+	public static final int ADVERB = 8;
+	public static final int ANY_POS = NOUN | VERB | ADJECTIVE | ADVERB;
+	private static final int NO_PLURAL = 16;
+	private static final int PLURAL_EXCEPTION = 32;
+	private static final int PLURAL_EXCEPTION_NOUN = 64;
+
+	private static final int ROOT = 0;
+
+	//Nodes are stored in parallel arrays; lemmas are inserted reversed, so that the suffixes of an
+	//expression can be matched walking it from its last word to the first one
+	private char[] labels = new char[1 << 16];
+	private int[] firstChild = new int[1 << 16];
+	private int[] nextSibling = new int[1 << 16];
+	private byte[] flags = new byte[1 << 16];
+	private int size = 1;
+
+	private LexiconTrie(){
+
+		firstChild[ROOT] = -1;
+		nextSibling[ROOT] = -1;
+	}
+
+	//Build the trie from the WordNet lemmas of each POS and the plural lists
+	public static LexiconTrie build(Iterator<String> nouns, Iterator<String> verbs, Iterator<String> adjectives,
+			Iterator<String> adverbs, List<String> notPlural, Map<String, String> plExceptions){
+
+		LexiconTrie trie = new LexiconTrie();
+
+		while (nouns.hasNext()){
+			trie.add(nouns.next(), NOUN);
+		}
+		while (verbs.hasNext()){
+			trie.add(verbs.next(), VERB);
+		}
+		while (adjectives.hasNext()){
+			trie.add(adjectives.next(), ADJECTIVE);
+		}
+		while (adverbs.hasNext()){
+			trie.add(adverbs.next(), ADVERB);
+		}
+
+		for (String entry : notPlural){
+			trie.add(entry.toLowerCase(), NO_PLURAL);
+		}
+
+		for (Map.Entry<String, String> exception : plExceptions.entrySet()){
+			int node = trie.find(exception.getValue().toLowerCase());
+			boolean noun = node >= 0 && (trie.flags[node] & NOUN) != 0;
+			trie.add(exception.getKey().toLowerCase(), noun ? PLURAL_EXCEPTION | PLURAL_EXCEPTION_NOUN : PLURAL_EXCEPTION);
+		}
+		trie.trim();
+
+		return trie;
+	}
+
+	//Insert a lemma, reversed, marking its last node with the given flags
+	private void add(String lemma, int flag){
+
+		int node = ROOT;
+
+		for (int i=lemma.length()-1; i >= 0; i--){
+			int child = child(node, lemma.charAt(i));
+
+			if (child < 0){
+				child = newNode(lemma.charAt(i));
+				nextSibling[child] = firstChild[node];
+				firstChild[node] = child;
+			}
+			node = child;
+		}
+		flags[node] |= flag;
+	}
+
+	private int newNode(char label){
+
+		if (size == labels.length){
+			int capacity = labels.length * 2;
+			labels = Arrays.copyOf(labels, capacity);
+			firstChild = Arrays.copyOf(firstChild, capacity);
+			nextSibling = Arrays.copyOf(nextSibling, capacity);
+			flags = Arrays.copyOf(flags, capacity);
+		}
+		labels[size] = label;
+		firstChild[size] = -1;
+		nextSibling[size] = -1;
+
+		return size++;
+	}
+
+	private void trim(){
+
+		labels = Arrays.copyOf(labels, size);
+		firstChild = Arrays.copyOf(firstChild, size);
+		nextSibling = Arrays.copyOf(nextSibling, size);
+		flags = Arrays.copyOf(flags, size);
+	}
+
+	//Return the child of a node with the given label (compared in lower case), or -1
+	private int child(int node, char label){
+
+		if (node < 0){
+			return -1;
+		}
+
+		char c = Character.toLowerCase(label);
+		for (int child = firstChild[node]; child >= 0; child = nextSibling[child]){
+			if (labels[child] == c){
+				return child;
+			}
+		}
+		return -1;
+	}
+
+	//Walk the characters word[from-1] down to word[0]
+	private int walk(int node, String word, int from){
+
+		for (int i=from-1; i >= 0 && node >= 0; i--){
+			node = child(node, word.charAt(i));
+		}
+		return node;
+	}
+
+	//Walk a number of word separators
+	private int walkSeparators(int node, int count){
+
+		for (int i=0; i < count && node >= 0; i++){
+			node = child(node, '_');
+		}
+		return node;
+	}
+
+	private int flagsOf(int node){
+		return node < 0 ? 0 : flags[node];
+	}
+
+	//Return the node of a lemma, or -1 if it is not in the trie
+	private int find(String lemma){
+		return walk(ROOT, lemma, lemma.length());
+	}
+
+	//Check whether a lemma is a WordNet entry for any of the POS in the mask
+	public boolean contains(String lemma, int posMask){
+		return lemma.length() > 0 && (flagsOf(find(lemma)) & posMask) != 0;
+	}
+
+	//Return the index of the first word of the longest suffix of the expression that is a WordNet entry, or -1.
+	//For nouns the suffix is singularized as DefinitionParser.getSingular does before looking it up
+	public int longestSuffix(List<String> exp, int posMask){
+
+		boolean noun = posMask == NOUN;
+		int best = -1;
+
+		int raw = ROOT;
+		int variant = -1;
+		int variant4 = -1;
+		boolean started = false;
+		int separators = 0;
+		int length = 0;
+
+		//Singularization rule of the last word: 0 none, 1 drop the last letter, 2 drop "es", 3 "ies" to "y"
+		int rule = 0;
+		boolean endsWithS = false;
+		boolean lastHasVowel = false;
+		boolean prefixHasVowel = false;
+
+		for (int idx = exp.size()-1; idx >= 0; idx--){
+			String word = exp.get(idx);
+
+			if (word.length() == 0){
+				if (started){
+					separators++;
+				}
+			}
+			else if (!started){
+				started = true;
+				length = word.length();
+				raw = walk(ROOT, word, word.length());
+
+				if (noun){
+					endsWithS = word.endsWith("s");
+
+					if (word.endsWith("us") || word.endsWith("ss")){
+						rule = 0;
+					}
+					else if (word.endsWith("sses")){
+						rule = 2;
+						variant = walk(ROOT, word, word.length()-2);
+					}
+					else if (word.endsWith("ies")){
+						rule = 3;
+						variant = walk(child(ROOT, 'y'), word, word.length()-3);
+						variant4 = walk(ROOT, word, word.length()-1);
+					}
+					else if (endsWithS){
+						rule = 1;
+						variant = walk(ROOT, word, word.length()-1);
+						lastHasVowel = hasVowel(word, word.length()-2);
+					}
+				}
+			}
+			else{
+				length += separators + 1 + word.length();
+				raw = walk(walkSeparators(raw, separators + 1), word, word.length());
+				variant = walk(walkSeparators(variant, separators + 1), word, word.length());
+				prefixHasVowel = prefixHasVowel || hasVowel(word, word.length());
+				separators = 0;
+			}
+
+			if (started){
+				boolean found;
+
+				if (!noun){
+					found = (flagsOf(raw) & posMask) != 0;
+				}
+				else{
+					int rawFlags = flagsOf(raw);
+					boolean plural = length > 2 && (rawFlags & NO_PLURAL) == 0 && ((rawFlags & PLURAL_EXCEPTION) != 0 || endsWithS);
+
+					if (!plural){
+						found = (rawFlags & NOUN) != 0;
+					}
+					else if ((rawFlags & PLURAL_EXCEPTION) != 0){
+						found = (rawFlags & PLURAL_EXCEPTION_NOUN) != 0;
+					}
+					else if (rule == 3 && length == 4){
+						found = (flagsOf(variant4) & NOUN) != 0;
+					}
+					else if (rule == 0 || (rule == 1 && !lastHasVowel && !prefixHasVowel)){
+						found = (rawFlags & NOUN) != 0;
+					}
+					else{
+						found = (flagsOf(variant) & NOUN) != 0;
+					}
+				}
+
+				if (found){
+					best = idx;
+				}
+				else if (raw < 0 && variant < 0){
+					//No longer suffix can be an entry
+					break;
+				}
+			}
+		}
+		return best;
+	}
+
+	//Check whether word[0..end) contains a vowel, as getSingular's [aeiou] test does
+	private static boolean hasVowel(String word, int end){
+
+		for (int i=0; i < end; i++){
+			if ("aeiou".indexOf(word.charAt(i)) >= 0){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public int size(){
+		return size;
+	}
+
+	//Return the bytes taken by the node arrays (2 for the label, 4 for each link and 1 for the flags of every node)
+	public long bytes(){
+		return (long) labels.length * 2 + (long) firstChild.length * 4 + (long) nextSibling.length * 4 + flags.length;
+	}
+}
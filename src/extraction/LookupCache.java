@@ -0,0 +1,124 @@
+/****************************************************************/
+/* Class LookupCache                                            */
+/* Bounded, thread-safe LRU cache of lookup results, split in   */
+/* independently locked stripes                                 */
+/*                                                              */
+/* Author: Vivian Silva                                         */
+/****************************************************************/
+
+package extraction;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class LookupCache<K, V> {
+
+	private static final int STRIPES = 16;
+
+	private final String name;
+	private final Stripe<K, V>[] stripes;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	//A stripe is an access ordered map that drops its least recently used entry when full
+	private static class Stripe<K, V> extends LinkedHashMap<K, V> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+		private final AtomicLong evictions;
+
+		Stripe(int capacity, AtomicLong evictions){
+
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+			this.evictions = evictions;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest){
+
+			if (size() > capacity){
+				evictions.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+	}
+
+	//A size of 0 or less disables the cache
+	@SuppressWarnings("unchecked")
+	public LookupCache(String name, int size){
+
+		this.name = name;
+		this.stripes = (Stripe<K, V>[]) new Stripe<?, ?>[size > 0 ? STRIPES : 0];
+
+		for (int i=0; i < stripes.length; i++){
+			stripes[i] = new Stripe<K, V>(Math.max(1, size / STRIPES), evictions);
+		}
+	}
+
+	private Stripe<K, V> stripe(K key){
+
+		int h = key.hashCode();
+		return stripes[(h ^ (h >>> 16)) & (STRIPES-1)];
+	}
+
+	//Return the cached value of a key, or null if it isn't cached (values themselves are never null)
+	public V get(K key){
+
+		if (stripes.length == 0){
+			misses.incrementAndGet();
+			return null;
+		}
+
+		Stripe<K, V> stripe = stripe(key);
+		V value;
+
+		synchronized (stripe){
+			value = stripe.get(key);
+		}
+
+		if (value == null){
+			misses.incrementAndGet();
+		}
+		else{
+			hits.incrementAndGet();
+		}
+		return value;
+	}
+
+	public void put(K key, V value){
+
+		if (stripes.length == 0){
+			return;
+		}
+
+		Stripe<K, V> stripe = stripe(key);
+
+		synchronized (stripe){
+			stripe.put(key, value);
+		}
+	}
+
+	public int size(){
+
+		int size = 0;
+
+		for (Stripe<K, V> stripe : stripes){
+			synchronized (stripe){
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+
+	public void printStats(){
+
+		System.out.println("Cache [" + name + "]: " + hits.get() + " hits, " + misses.get() + " misses, " + evictions.get()
+				+ " evictions, " + size() + " entries");
+	}
+}
@@ -0,0 +1,118 @@
+/****************************************************************/
+/* Class MatchBenchmark                                         */
+/* Times the extraction rule expressions over the parse trees   */
+/* of the definitions with TRegex and with the tree index, and  */
+/* checks that both engines find the same nodes                 */
+/*                                                              */
+/* Author: Vivian Silva                                         */
+/****************************************************************/
+
+package extraction;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.stanford.nlp.trees.Tree;
+
+public class MatchBenchmark {
+
+	//Match every expression over each tree, binding the word slots to each word of the tree, and collect the matches
+	private static List<Tree> run(List<Tree> trees, List<String> expressions, boolean indexed){
+
+		List<Tree> matches = new ArrayList<Tree>();
+
+		for (Tree tree : trees){
+			TreeIndex index = indexed ? new TreeIndex(tree) : null;
+
+			List<String> words = new ArrayList<String>();
+			for (Tree leaf : tree.getLeaves()){
+				words.add(leaf.value());
+			}
+
+			for (String expression : expressions){
+				List<String> bindings = new ArrayList<String>();
+
+				if (expression.contains("=" + PatternRegistry.WORD_SLOT)){
+					bindings.addAll(words);
+				}
+				else{
+					bindings.add(null);
+				}
+
+				for (String word : bindings){
+					if (indexed){
+						matches.add(index.firstMatch(expression, tree, word));
+						matches.addAll(index.allMatches(expression, tree, word));
+					}
+					else{
+						matches.add(PatternRegistry.get(expression).firstMatch(tree, word));
+						matches.addAll(PatternRegistry.get(expression).allMatches(tree, word));
+					}
+				}
+			}
+		}
+		return matches;
+	}
+
+	//Arguments: number of definitions of input/definitions.txt to parse (1000 by default) and number of timed rounds (5)
+	public static void main(String args[]){
+
+		int limit = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		List<Tree> trees = new ArrayList<Tree>();
+
+		try{
+			DefinitionParser dp = new DefinitionParser();
+			DefinitionReader definitions = dp.openDataFile("input/definitions.txt");
+
+			System.out.println("Parsing definitions (this may take some time...)");
+			while (definitions.hasNext() && trees.size() < limit){
+				String gloss = definitions.next().getGloss();
+				String accDet = dp.getAccessoryDeterminer(gloss);
+
+				trees.add(dp.parse(accDet.equals("") ? gloss : gloss.replaceFirst(accDet.trim(), "")).get(0));
+			}
+			definitions.close();
+		}
+		catch (IOException e){
+			e.printStackTrace();
+			return;
+		}
+
+		List<String> expressions = TreeIndex.getExpressions();
+
+		//Check the engines agree, which also warms them up
+		List<Tree> expected = run(trees, expressions, false);
+		List<Tree> found = run(trees, expressions, true);
+		int differences = Math.abs(expected.size() - found.size());
+
+		for (int i=0; i < Math.min(expected.size(), found.size()); i++){
+			if (expected.get(i) != found.get(i)){
+				differences++;
+			}
+		}
+
+		long tregexTime = 0;
+		long indexTime = 0;
+
+		for (int round=0; round < rounds; round++){
+			long start = System.nanoTime();
+			run(trees, expressions, false);
+			tregexTime += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			run(trees, expressions, true);
+			indexTime += System.nanoTime() - start;
+		}
+
+		System.out.println(trees.size() + " trees, " + expressions.size() + " expressions, " + expected.size() + " matches, "
+				+ differences + " differences between the engines");
+		System.out.println("TRegex: " + (tregexTime / 1000000 / Math.max(1, rounds)) + " ms per round");
+		System.out.println("Tree index: " + (indexTime / 1000000 / Math.max(1, rounds)) + " ms per round, including indexing");
+		if (indexTime > 0){
+			System.out.println(String.format("Speedup: %.1fx", (double) tregexTime / indexTime));
+		}
+	}
+}
@@ -0,0 +1,88 @@
+/****************************************************************/
+/* Class MatchMemo                                              */
+/* Results of the rule expressions already matched while one    */
+/* definition is analyzed, so that repeated queries don't       */
+/* search the tree again                                        */
+/*                                                              */
+/* Author: Vivian Silva                                         */
+/****************************************************************/
+
+package extraction;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.stanford.nlp.trees.Tree;
+
+public class MatchMemo {
+
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+
+	private final Map<Key, List<Tree>> results = new HashMap<Key, List<Tree>>();
+
+	//A query: the compiled pattern, the word bound to its slots, the subtree searched (by identity) and whether all
+	//the matches or only the first one were asked for
+	private static class Key {
+
+		private final PatternRegistry pattern;
+		private final String word;
+		private final Tree tree;
+		private final boolean all;
+
+		private Key(PatternRegistry pattern, String word, Tree tree, boolean all){
+
+			this.pattern = pattern;
+			this.word = word;
+			this.tree = tree;
+			this.all = all;
+		}
+
+		@Override
+		public boolean equals(Object o){
+
+			if (!(o instanceof Key)){
+				return false;
+			}
+			Key other = (Key) o;
+
+			return pattern == other.pattern && tree == other.tree && all == other.all
+					&& (word == null ? other.word == null : word.equals(other.word));
+		}
+
+		@Override
+		public int hashCode(){
+			return (31 * System.identityHashCode(pattern) + System.identityHashCode(tree)) * 31 + (word == null ? 0 : word.hashCode())
+					+ (all ? 1 : 0);
+		}
+	}
+
+	//Return the matches stored for a query (a list of at most one node for a first match query), or null
+	public List<Tree> get(PatternRegistry pattern, String word, Tree tree, boolean all){
+
+		List<Tree> matches = results.get(new Key(pattern, word, tree, all));
+
+		if (matches == null){
+			misses.incrementAndGet();
+		}
+		else{
+			hits.incrementAndGet();
+		}
+		return matches;
+	}
+
+	public void put(PatternRegistry pattern, String word, Tree tree, boolean all, List<Tree> matches){
+		results.put(new Key(pattern, word, tree, all), matches);
+	}
+
+	//Drop the results of the definition analyzed so far
+	public void clear(){
+		results.clear();
+	}
+
+	public static void printStats(){
+		System.out.println("Match memo: " + hits.get() + " hits, " + misses.get() + " misses");
+	}
+}
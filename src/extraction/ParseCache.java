@@ -0,0 +1,83 @@
+/****************************************************************/
+/* Class ParseCache                                             */
+/* Persistent cache of the parse trees and named entity tags of */
+/* the definitions, addressed by the text and the models used   */
+/*                                                              */
+/* Author: Vivian Silva                                         */
+/****************************************************************/
+
+package extraction;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.stanford.nlp.trees.Tree;
+
+public class ParseCache {
+
+	private final RecordStore store;
+
+	public ParseCache(String cachefile) throws IOException{
+		store = new RecordStore("parse cache", cachefile);
+	}
+
+	//Return the parse trees of a text stored for a parser configuration, or null
+	public List<Tree> getTrees(String text, String config){
+
+		String value = store.get(RecordStore.digest("trees\n" + config + "\n" + text));
+
+		if (value == null){
+			return null;
+		}
+
+		List<Tree> trees = new ArrayList<Tree>();
+		for (String tree : value.split("\n")){
+			trees.add(Tree.valueOf(tree));
+		}
+		return trees;
+	}
+
+	//Store the parse trees of a text, one per line in bracketed format
+	public void putTrees(String text, String config, List<Tree> trees){
+
+		StringBuilder value = new StringBuilder();
+
+		for (Tree tree : trees){
+			if (value.length() > 0){
+				value.append('\n');
+			}
+			value.append(tree.toString());
+		}
+		store.put(RecordStore.digest("trees\n" + config + "\n" + text), value.toString());
+	}
+
+	//Return the named entity tags of the tokens of a text stored for a classifier, or null
+	public List<String> getNERTags(String text, String config){
+
+		String value = store.get(RecordStore.digest("ner\n" + config + "\n" + text));
+
+		if (value == null){
+			return null;
+		}
+		return value.length() == 0 ? new ArrayList<String>() : new ArrayList<String>(Arrays.asList(value.split(" ")));
+	}
+
+	public void putNERTags(String text, String config, List<String> tags){
+
+		StringBuilder value = new StringBuilder();
+
+		for (String tag : tags){
+			if (value.length() > 0){
+				value.append(' ');
+			}
+			value.append(tag);
+		}
+		store.put(RecordStore.digest("ner\n" + config + "\n" + text), value.toString());
+	}
+
+	public void printStats(){
+		store.printStats();
+	}
+}
@@ -0,0 +1,237 @@
+/****************************************************************/
+/* Class PatternRegistry                                        */
+/* Compiles each TRegex expression used by the extraction rules */
+/* only once and keeps usage counters for every pattern         */
+/*                                                              */
+/* Author: Vivian Silva                                         */
+/****************************************************************/
+
+package extraction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.tregex.TregexMatcher;
+import edu.stanford.nlp.trees.tregex.TregexPattern;
+
+public class PatternRegistry {
+
+	//Prefix of the named nodes whose label must contain the word bound at match time, e.g. "@PP << __=word"
+	public static final String WORD_SLOT = "word";
+
+	private static final Map<String, PatternRegistry> patterns = new ConcurrentHashMap<String, PatternRegistry>();
+
+	private final String expression;
+	private final TregexPattern pattern;
+	private final List<String> slots;
+
+	//Masks of the labels required by each alternative, or null if the expression declares no requirements
+	private volatile long[] required;
+
+	private final AtomicLong compiles = new AtomicLong();
+	private final AtomicLong matchCalls = new AtomicLong();
+	private final AtomicLong matchesFound = new AtomicLong();
+	private final AtomicLong checks = new AtomicLong();
+	private final AtomicLong skips = new AtomicLong();
+
+	private PatternRegistry(String expression){
+
+		this.expression = expression;
+		this.pattern = TregexPattern.compile(expression);
+		this.compiles.incrementAndGet();
+
+		//Collect the word slots declared in the expression
+		slots = new ArrayList<String>();
+		int idx = expression.indexOf("=" + WORD_SLOT);
+
+		while (idx >= 0){
+			int end = idx + 1;
+			while (end < expression.length() && Character.isLetterOrDigit(expression.charAt(end))){
+				end++;
+			}
+			slots.add(expression.substring(idx + 1, end));
+			idx = expression.indexOf("=" + WORD_SLOT, end);
+		}
+	}
+
+	//Return the compiled pattern for an expression, compiling it the first time it is requested
+	public static PatternRegistry get(String expression){
+
+		PatternRegistry registered = patterns.get(expression);
+
+		if (registered == null){
+			synchronized (patterns){
+				registered = patterns.get(expression);
+
+				if (registered == null){
+					registered = new PatternRegistry(expression);
+					patterns.put(expression, registered);
+				}
+			}
+		}
+		return registered;
+	}
+
+	//Return the compiled pattern for an expression, setting the labels a tree needs to match it: alternatives
+	//separated by "|", each listing labels of CompactTree.MASK_LABELS that must all be present (null for none)
+	public static PatternRegistry require(String expression, String requirement){
+
+		PatternRegistry registered = get(expression);
+
+		if (requirement == null){
+			registered.required = null;
+		}
+		else{
+			String[] alternatives = requirement.split("\\|");
+			long[] masks = new long[alternatives.length];
+
+			for (int i=0; i < alternatives.length; i++){
+				masks[i] = CompactTree.getMask(alternatives[i].trim().split(" "));
+			}
+			registered.required = masks;
+		}
+		return registered;
+	}
+
+	//Check whether a tree containing the labels of a mask may match the pattern, counting the searches it avoids
+	public boolean canMatch(long labelMask){
+
+		long[] masks = required;
+
+		if (masks == null){
+			return true;
+		}
+		checks.incrementAndGet();
+
+		for (long mask : masks){
+			if ((labelMask & mask) == mask){
+				return true;
+			}
+		}
+		skips.incrementAndGet();
+		return false;
+	}
+
+	//Check that a word is given to match a pattern with word slots
+	public void checkWord(String word){
+
+		if (word == null && !slots.isEmpty()){
+			throw new IllegalArgumentException("No word given for the word slots of pattern [" + expression + "]");
+		}
+	}
+
+	//Return the first subtree matching the pattern whose word slots, if any, contain the given word
+	public Tree firstMatch(Tree parseTree, String word){
+
+		checkWord(word);
+		matchCalls.incrementAndGet();
+		TregexMatcher matcher = pattern.matcher(parseTree);
+
+		if (slots.isEmpty()){
+			if (matcher.findNextMatchingNode()){
+				matchesFound.incrementAndGet();
+				return matcher.getMatch();
+			}
+			return null;
+		}
+
+		while (matcher.find()){
+			if (bindsWord(matcher, word)){
+				matchesFound.incrementAndGet();
+				return matcher.getMatch();
+			}
+		}
+		return null;
+	}
+
+	//Return all the subtrees matching the pattern whose word slots, if any, contain the given word
+	public List<Tree> allMatches(Tree parseTree, String word){
+
+		checkWord(word);
+		List<Tree> matches = new ArrayList<Tree>();
+
+		matchCalls.incrementAndGet();
+		TregexMatcher matcher = pattern.matcher(parseTree);
+
+		if (slots.isEmpty()){
+			while (matcher.findNextMatchingNode()){
+				matches.add(matcher.getMatch());
+			}
+		}
+		else{
+			//Every binding of a node is visited before moving to the next one, so a node is added only once
+			Tree last = null;
+
+			while (matcher.find()){
+				if (matcher.getMatch() != last && bindsWord(matcher, word)){
+					last = matcher.getMatch();
+					matches.add(last);
+				}
+			}
+		}
+		matchesFound.addAndGet(matches.size());
+
+		return matches;
+	}
+
+	//Check whether the nodes bound to the word slots contain the word, as a /word/ node description would
+	private boolean bindsWord(TregexMatcher matcher, String word){
+
+		boolean bound = false;
+
+		for (String slot : slots){
+			Tree node = matcher.getNode(slot);
+
+			if (node != null){
+				if (!labelContains(node.value(), word)){
+					return false;
+				}
+				bound = true;
+			}
+		}
+		return bound;
+	}
+
+	//Regex search of the word over a node label, avoiding the regex engine for plain words
+	static boolean labelContains(String label, String word){
+
+		if (label == null){
+			return false;
+		}
+
+		for (int i=0; i < word.length(); i++){
+			if ("\\.[]{}()<>*+-=!?^$|".indexOf(word.charAt(i)) >= 0){
+				try{
+					return Pattern.compile(word).matcher(label).find();
+				}
+				catch (PatternSyntaxException e){
+					return label.contains(word);
+				}
+			}
+		}
+		return label.contains(word);
+	}
+
+	public String getExpression(){
+		return expression;
+	}
+
+	//Print the compile and match counters of every registered pattern
+	public static void printStats(){
+
+		for (PatternRegistry registered : patterns.values()){
+			long checked = registered.checks.get();
+			long skipped = registered.skips.get();
+			
+			System.out.println("Pattern [" + registered.expression + "]: compiled " + registered.compiles.get() + " times, "
+					+ registered.matchCalls.get() + " match calls, " + registered.matchesFound.get() + " matches, " + skipped + " of "
+					+ checked + " searches skipped by the label prefilter (" + (checked > 0 ? 100 * skipped / checked : 0) + "%)");
+		}
+	}
+}
@@ -71,15 +71,15 @@ public class PostProcessing {
 	}
 	
 	//Convert a text segment to the IOB format
-	private static List<String> toIOB(List<String> def){
+	private static List<String> toIOB(List<RoleSpan> def){
     	
     	List<String> newDef = new ArrayList<String>();
     	
-    	for(String role : def){
-    		String[] text = role.split(":")[0].split(" ");
-    		String label = role.split(":")[1].replaceAll(" ", "_");
+    	for(RoleSpan role : def){
+    		String[] text = role.getText().split(" ");
+    		String label = role.getRole().getLabel("_");
     			
-    		if (label.equals("0")){
+    		if (role.getRole() == Role.NONE){
     			for (int i=0; i < text.length; i++){
     				newDef.add(text[i] + " O");
     			}
@@ -95,6 +95,14 @@ public class PostProcessing {
     	return newDef;
 	}	
 	
+	//Add a role found in the definition, if it could be located
+	private static void addRole(List<RoleSpan> roles, RoleSpan role){
+		
+		if (role != null){
+			roles.add(role);
+		}
+	}
+	
 	//Look for definitions missing a supertype
 	@SuppressWarnings({ "unchecked"})
 	private static void checkSupertypes (Vector<Vector<String>> definitions){
@@ -109,10 +117,11 @@ public class PostProcessing {
 	}
 	
 	//Get only the definition's supertype
-    private static List<String> getOnlySupertypes (String definition, String pos){
+    private static List<RoleSpan> getOnlySupertypes (TokenOffsets offsets, String pos){
     	
-    	List<String> roles = new ArrayList<String>();
-		String expression = new String();
+    	List<RoleSpan> roles = new ArrayList<RoleSpan>();
+    	String definition = offsets.getText();
+		RuleSet rules = dp.getRules();
 		
 		pos = pos.equals("noun") ? "n" : "v";
 		
@@ -120,8 +129,9 @@ public class PostProcessing {
 		String accDet = dp.getAccessoryDeterminer(definition);
 		
 		if (!accDet.equals("") && !accDet.equals(definition)){
-			roles.add(definition.indexOf(accDet.trim()) + "|" + accDet.trim() + "|accessory determiner");
+			addRole(roles, offsets.locate(accDet.trim(), Role.ACCESSORY_DETERMINER));
 			definition = definition.replaceFirst(accDet.trim(), "");
+			offsets.setOrigin(offsets.getText().length() - definition.length());
 		}
 		
 		Tree parseTree = dp.parse(definition).get(0);
@@ -137,15 +147,14 @@ public class PostProcessing {
 		//For verbs
 		if(pos.equals("v")){
 			String head = definition.split(" ")[0];
-			expression = "@/VB.?/";
-			Tree vbTree = dp.getFirstTreeMatch(expression, parseTree);
-			List<Tree> allVBs = dp.getAllTreeMatches(expression, parseTree);
+			Tree vbTree = dp.getFirstTreeMatch(rules.get("verb_head"), parseTree);
+			List<Tree> allVBs = dp.getAllTreeMatches(rules.get("verb_head"), parseTree);
 			List<String> firstVB = new ArrayList<String>();
 			
 			String nextWord = new String();
 			
 			if (vbTree != null){
-				firstVB = dp.getWordList(vbTree.yieldWords());
+				firstVB = dp.getWords(vbTree);
 				
 				//The first VB must also be the first word in the definition
 				if (firstVB.get(0).equals(head) || allVBs.size() == 1){
@@ -156,12 +165,11 @@ public class PostProcessing {
 				
 					do{
 						//Check if it is a phrasal verb
-						expression = "PRT $- (@/VB.?/ < /" + supertype + "/)";
-						Tree prtTree = dp.getFirstTreeMatch(expression, parseTree);
+						Tree prtTree = dp.getFirstTreeMatch(rules.get("verb_particle"), parseTree, supertype);
 						List<String> prt = new ArrayList<String>();
 				
 						if(prtTree != null){
-							prt = dp.getWordList(prtTree.yieldWords());
+							prt = dp.getWords(prtTree);
 							supertype += " " + dp.toExpression(prt);
 						}
 				
@@ -203,18 +211,7 @@ public class PostProcessing {
 							supertype = temp;
 						}
 						
-						if (definition.contains(" " + supertype + " ")){
-							roles.add((definition.indexOf(" " + supertype + " ")+1) + "|" + supertype + "|supertype");
-						}
-						else if (definition.contains(supertype + " ") && definition.indexOf(supertype + " ") == 0){
-							roles.add(definition.indexOf(supertype + " ") + "|" + supertype + "|supertype");
-						}
-						else if (definition.contains(" " + supertype)){
-							roles.add((definition.indexOf(" " + supertype)+1) + "|" + supertype + "|supertype");
-						}
-						else{
-							roles.add(definition.indexOf(supertype) + "|" + supertype + "|supertype");
-						}
+						addRole(roles, offsets.locate(supertype, Role.SUPERTYPE));
 
 						//Look for additional supertypes separated by conjunctions
 						String toReplace = newDef.contains(supertype + " ") ? supertype + " " : supertype;
@@ -225,7 +222,7 @@ public class PostProcessing {
 					
 							if (newDef.split(" ").length > 1){
 								if(nextWord.equals("or") || nextWord.equals("and")){
-									roles.add(definition.indexOf(newDef) + "|" + nextWord + "|0");
+									addRole(roles, offsets.at(definition.indexOf(newDef), nextWord, Role.NONE));
 									supertype = newDef.split(" ")[1];
 									newDef = newDef.replaceFirst(Pattern.quote(nextWord) + " ", "");
 								}
@@ -244,39 +241,34 @@ public class PostProcessing {
 		
 		//For nouns or misclassified verbs
 		if(pos.equals("n") || !verbSTfound){
-			//expression = "@NP !<< @NP !<- POS << @/NN.?/ | <- @/NN.?/";
-			expression = "@NP !<< @NP << @/NN.?/ | <- @/NN.?/";
-			Tree supertypeTree = dp.getFirstTreeMatch(expression, parseTree);
+			Tree supertypeTree = dp.getFirstTreeMatch(rules.get("supertype_np_possessive"), parseTree);
 			
 			if (supertypeTree != null){
-				firstNP = dp.getWordList(supertypeTree.yieldWords());
+				firstNP = new ArrayList<String>(dp.getWords(supertypeTree));
 					
 				//Check whether the NP contains conjunctions
-				expression = "@CC";
-				List<Tree> conjTrees = dp.getAllTreeMatches(expression, supertypeTree);
+				List<Tree> conjTrees = dp.getAllTreeMatches(rules.get("conjunction"), supertypeTree);
 			
 				if(conjTrees.size() > 0){
 					for (Tree conjTree : conjTrees){
-						conjunctions.addAll(dp.getWordList(conjTree.yieldWords()));
+						conjunctions.addAll(dp.getWords(conjTree));
 						numConjunctions = conjunctions.size();
 					}
 				}
 			
 				//Strip off leading determiner (the leftmost child of the NP), if any
-				expression = "@DT  >>, @NP";
-				Tree detTree = dp.getFirstTreeMatch(expression, supertypeTree);
+				Tree detTree = dp.getFirstTreeMatch(rules.get("leading_determiner"), supertypeTree);
 				List<String> determiner = new ArrayList<String>();
 			
 				if (detTree != null){
-					determiner = dp.getWordList(detTree.yieldWords());
+					determiner = dp.getWords(detTree);
 				
 					firstNP.remove(0);
-					roles.add(definition.indexOf(determiner.get(0)) + "|" + determiner.get(0) + "|0");
+					addRole(roles, offsets.locate(determiner.get(0), Role.NONE));
 				}
 				
 				//Strip off possessive marker (the rightmost child of the NP), if any
-				expression = "POS";
-				Tree posTree = dp.getFirstTreeMatch(expression, supertypeTree);
+				Tree posTree = dp.getFirstTreeMatch(rules.get("possessive"), supertypeTree);
 			
 				if (posTree != null){
 					firstNP.remove(firstNP.size()-1);
@@ -289,12 +281,11 @@ public class PostProcessing {
 			boolean skip = false;
 			if (supertype.length() == 0){
 				if (firstNP.size() > 0){
-					expression = "@/NN.?/";
-					Tree nounTree = dp.getFirstTreeMatch(expression, supertypeTree);
+					Tree nounTree = dp.getFirstTreeMatch(rules.get("first_noun"), supertypeTree);
 					List<String> firstNoun = new ArrayList<String>();
 				
 					if (nounTree != null){
-						firstNoun = dp.getWordList(nounTree.yieldWords());
+						firstNoun = dp.getWords(nounTree);
 						supertype = firstNoun.get(0);
 						skip = true;
 					}
@@ -303,12 +294,11 @@ public class PostProcessing {
 					}
 				}
 				else{//If there's no NP in the sentence, get the rightmost word in the first ROOT's child
-					expression = "__ >>- (__ >, ROOT)";
-					Tree defaultTree = dp.getFirstTreeMatch(expression, parseTree);
+					Tree defaultTree = dp.getFirstTreeMatch(rules.get("default_supertype"), parseTree);
 					List<String> defaultST = new ArrayList<String>();
 					
 					if (defaultTree != null){
-						defaultST = dp.getWordList(defaultTree.yieldWords());
+						defaultST = dp.getWords(defaultTree);
 						supertype = defaultST.get(0);
 						
 						//first word not alphanumeric, get the second one
@@ -373,18 +363,7 @@ public class PostProcessing {
 				supertype = temp;
 			}
 			
-			if (definition.contains(" " + supertype + " ")){
-				roles.add((definition.indexOf(" " + supertype + " ")+1) + "|" + supertype + "|supertype");
-			}
-			else if (definition.contains(supertype + " ") && definition.indexOf(supertype + " ") == 0){
-				roles.add(definition.indexOf(supertype + " ") + "|" + supertype + "|supertype");
-			}
-			else if (definition.contains(" " + supertype)){
-				roles.add((definition.indexOf(" " + supertype)+1) + "|" + supertype + "|supertype");
-			}
-			else{
-				roles.add(definition.indexOf(supertype) + "|" + supertype + "|supertype");
-			}
+			addRole(roles, offsets.locate(supertype, Role.SUPERTYPE));
 			
 			if (skip){
 				String temp = dp.toExpression(firstNP).replaceFirst(Pattern.quote(supertype) + " ", "");
@@ -400,12 +379,12 @@ public class PostProcessing {
 			int offset = lastWord.equals("or") ? 3 : (lastWord.equals("and") ? 4 : 0);
 				
 			while(numConjunctions > 0 && (lastWord.equals("or") || lastWord.equals("and"))){
-				roles.add(definition.indexOf(supertype)-offset + "|" + lastWord + "|0");
+				addRole(roles, offsets.at(definition.indexOf(supertype)-offset, lastWord, Role.NONE));
 				firstNP = dp.removeAllWords(firstNP, 1);
 			
 				String addSupertype = dp.getLongestEntry(firstNP, pos, false).replaceAll("_", " ");
 			
-				roles.add(definition.indexOf(addSupertype) + "|" + addSupertype + "|supertype");
+				addRole(roles, offsets.locate(addSupertype, Role.SUPERTYPE));
 				firstNP = dp.removeAllWords(firstNP, addSupertype.split(" ").length);
 				lastWord = firstNP.size() > 1 ? firstNP.get(firstNP.size()-1) : addSupertype;
 				numConjunctions--;
@@ -416,7 +395,7 @@ public class PostProcessing {
 
 	//For definitions where a supertype was added, merge this role with previous identified ones
     @SuppressWarnings({ "unchecked" })
-	private static Vector<Vector<String>> mergeSupertypes(List<List<String>> fixedSupertypes){
+	private static Vector<Vector<String>> mergeSupertypes(List<List<RoleSpan>> fixedSupertypes){
 		
 		Vector<Vector<String>> mergedSupertypes = new Vector<Vector<String>>();
 		
@@ -573,7 +552,7 @@ public class PostProcessing {
     	System.out.println("Checking definitions (this may take some time...)");
     	checkSupertypes(classified);
     	
-		List<List<String>> supertypes = new ArrayList<List<String>>();
+		List<List<RoleSpan>> supertypes = new ArrayList<List<RoleSpan>>();
 		
 		for (int index : indexes){
 			String def = definitions.get(index-1);
@@ -581,7 +560,8 @@ public class PostProcessing {
 			String pos = tokens[1];
 			String gloss = tokens[3];
 
-			supertypes.add(dp.sort(gloss, getOnlySupertypes(gloss, pos)));
+			TokenOffsets offsets = new TokenOffsets(gloss);
+			supertypes.add(dp.sort(offsets, getOnlySupertypes(offsets, pos)));
 		}
 		
 		//Merge the labels in classifications where supertypes were added
@@ -592,6 +572,11 @@ public class PostProcessing {
 		
 		//Fix labels for all classifications
 		fixLabels(newClassified, "output/classified_fixed.txt");
+		
+		DefinitionParser.printPipelineStats();
+		DefinitionParser.printCacheStats();
+		PatternRegistry.printStats();
+		RuleSet.getShared().printStats();
     }
 
 }
@@ -0,0 +1,124 @@
+/****************************************************************/
+/* Class PrefixMatcher                                          */
+/* Prefix trie of a phrase list, used to find the longest       */
+/* phrase a text starts with in a single pass                   */
+/*                                                              */
+/* Author: Vivian Silva                                         */
+/****************************************************************/
+
+package extraction;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class PrefixMatcher {
+
+	private static final int ROOT = 0;
+
+	//Nodes are stored in parallel arrays; entry holds the index of the phrase ending at a node, or -1
+	private char[] labels = new char[256];
+	private int[] firstChild = new int[256];
+	private int[] nextSibling = new int[256];
+	private int[] entry = new int[256];
+	private int size = 1;
+
+	private final String[] phrases;
+
+	public PrefixMatcher(List<String> phrases){
+
+		this.phrases = phrases.toArray(new String[phrases.size()]);
+
+		firstChild[ROOT] = -1;
+		nextSibling[ROOT] = -1;
+		entry[ROOT] = -1;
+
+		for (int i=0; i < this.phrases.length; i++){
+			add(this.phrases[i], i);
+		}
+		trim();
+	}
+
+	//Insert a phrase, keeping the first index if it is repeated
+	private void add(String phrase, int index){
+
+		int node = ROOT;
+
+		for (int i=0; i < phrase.length(); i++){
+			int child = child(node, phrase.charAt(i));
+
+			if (child < 0){
+				child = newNode(phrase.charAt(i));
+				nextSibling[child] = firstChild[node];
+				firstChild[node] = child;
+			}
+			node = child;
+		}
+		if (entry[node] < 0){
+			entry[node] = index;
+		}
+	}
+
+	private int newNode(char label){
+
+		if (size == labels.length){
+			int capacity = labels.length * 2;
+			labels = Arrays.copyOf(labels, capacity);
+			firstChild = Arrays.copyOf(firstChild, capacity);
+			nextSibling = Arrays.copyOf(nextSibling, capacity);
+			entry = Arrays.copyOf(entry, capacity);
+		}
+		labels[size] = label;
+		firstChild[size] = -1;
+		nextSibling[size] = -1;
+		entry[size] = -1;
+
+		return size++;
+	}
+
+	private void trim(){
+
+		labels = Arrays.copyOf(labels, size);
+		firstChild = Arrays.copyOf(firstChild, size);
+		nextSibling = Arrays.copyOf(nextSibling, size);
+		entry = Arrays.copyOf(entry, size);
+	}
+
+	private int child(int node, char label){
+
+		for (int child = firstChild[node]; child >= 0; child = nextSibling[child]){
+			if (labels[child] == label){
+				return child;
+			}
+		}
+		return -1;
+	}
+
+	//Return the longest phrase the text starts with that ends at a word boundary, or an empty string
+	public String longestPrefix(String text){
+
+		int best = -1;
+		int node = ROOT;
+
+		for (int i=0; i < text.length(); i++){
+			node = child(node, text.charAt(i));
+
+			if (node < 0){
+				break;
+			}
+			if (entry[node] >= 0 && isBoundary(text, i)){
+				best = entry[node];
+			}
+		}
+		return best < 0 ? "" : phrases[best];
+	}
+
+	//A phrase ending at position i ends a word if it ends with a separator itself or the next character isn't part of a word
+	private static boolean isBoundary(String text, int i){
+
+		return !Character.isLetterOrDigit(text.charAt(i)) || i+1 == text.length() || !Character.isLetterOrDigit(text.charAt(i+1));
+	}
+
+	public int size(){
+		return size;
+	}
+}
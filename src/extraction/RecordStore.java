@@ -0,0 +1,235 @@
+/****************************************************************/
+/* Class RecordStore                                            */
+/* Append-only file of key/value records with an in-memory      */
+/* index of the position of each key                            */
+/*                                                              */
+/* Author: Vivian Silva                                         */
+/****************************************************************/
+
+package extraction;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RecordStore {
+
+	//Record layout: key length, key UTF-8 bytes, value length, value UTF-8 bytes. A record appended
+	//later for the same key replaces the previous one
+	private final String name;
+	private final RandomAccessFile file;
+	private final Map<String, Long> index = new HashMap<String, Long>();
+
+	//Set when another process (e.g. RoleExtractor and PostProcessing sharing the parse cache) holds the store:
+	//its records can still be read, but nothing is written or truncated
+	private final boolean readOnly;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong writes = new AtomicLong();
+
+	//Open a store, creating it if needed, and index the records already in it. Only one process at a time may
+	//write to a store; any other opens it read only
+	public RecordStore(String name, String storefile) throws IOException{
+
+		this.name = name;
+
+		File parent = new File(storefile).getAbsoluteFile().getParentFile();
+		if (parent != null){
+			parent.mkdirs();
+		}
+		RandomAccessFile writable = new RandomAccessFile(storefile, "rw");
+		FileLock lock = null;
+
+		try{
+			lock = writable.getChannel().tryLock();
+		}
+		catch (OverlappingFileLockException e){
+			//Already open for writing in this JVM
+		}
+
+		if (lock == null){
+			writable.close();
+			file = new RandomAccessFile(storefile, "r");
+			readOnly = true;
+			System.out.println("Store [" + name + "]: " + storefile + " is in use by another run, opening it read only "
+					+ "(new records won't be stored)");
+		}
+		else{
+			//The lock is released when the file is closed
+			file = writable;
+			readOnly = false;
+		}
+
+		long start = System.currentTimeMillis();
+		long position = 0;
+		long length = file.length();
+
+		while (position < length){
+			try{
+				file.seek(position);
+				int keyLength = file.readInt();
+
+				if (keyLength < 0 || position + 8 + keyLength > length){
+					break;
+				}
+				file.seek(position);
+				String key = readString();
+				long valuePosition = file.getFilePointer();
+				int valueLength = file.readInt();
+
+				if (valueLength < 0 || valuePosition + 4 + valueLength > length){
+					break;
+				}
+				index.put(key, valuePosition);
+				position = valuePosition + 4 + valueLength;
+			}
+			catch (IOException e){
+				break;
+			}
+		}
+
+		//Drop a record left incomplete by an interrupted run; in a read only store it may be one still being written
+		if (position < length && !readOnly){
+			file.setLength(position);
+		}
+
+		System.out.println("Store [" + name + "]: " + index.size() + " records indexed from " + storefile + " in "
+				+ (System.currentTimeMillis() - start) + " ms");
+	}
+
+	//Return the value stored for a key, or null
+	public synchronized String get(String key){
+
+		String value = read(key);
+
+		if (value == null){
+			misses.incrementAndGet();
+		}
+		else{
+			hits.incrementAndGet();
+		}
+		return value;
+	}
+
+	//Return the value stored for a key, or null, without counting it as a lookup
+	public synchronized String peek(String key){
+		return read(key);
+	}
+
+	private String read(String key){
+
+		Long position = index.get(key);
+
+		if (position == null){
+			return null;
+		}
+
+		try{
+			file.seek(position);
+			return readString();
+		}
+		catch (IOException e){
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	public synchronized boolean contains(String key){
+		return index.containsKey(key);
+	}
+
+	//Append a record for a key, unless the store is read only
+	public synchronized void put(String key, String value){
+
+		if (readOnly){
+			return;
+		}
+
+		long position = -1;
+		try{
+			position = file.length();
+			file.seek(position);
+			writeString(key);
+			long valuePosition = file.getFilePointer();
+			writeString(value);
+
+			index.put(key, valuePosition);
+			writes.incrementAndGet();
+		}
+		catch (IOException e){
+			e.printStackTrace();
+
+			//Drop the part of the record already written, so the next ones aren't appended after it
+			if (position >= 0){
+				try{
+					file.setLength(position);
+				}
+				catch (IOException f){
+					f.printStackTrace();
+				}
+			}
+		}
+	}
+
+	public synchronized int size(){
+		return index.size();
+	}
+
+	public synchronized void close(){
+
+		try{
+			file.close();
+		}
+		catch (IOException e){
+			e.printStackTrace();
+		}
+	}
+
+	private String readString() throws IOException{
+
+		int length = file.readInt();
+		byte[] bytes = new byte[length];
+		file.readFully(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private void writeString(String s) throws IOException{
+
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		file.writeInt(bytes.length);
+		file.write(bytes);
+	}
+
+	//Return the SHA-1 digest of a text, in hexadecimal, to be used as a content address
+	public static String digest(String text){
+
+		try{
+			byte[] hash = MessageDigest.getInstance("SHA-1").digest(text.getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder();
+
+			for (byte b : hash){
+				hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return hex.toString();
+		}
+		catch (NoSuchAlgorithmException e){
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public void printStats(){
+
+		System.out.println("Store [" + name + "]: " + hits.get() + " hits, " + misses.get() + " misses, " + writes.get()
+				+ " records written, " + size() + " records");
+	}
+}
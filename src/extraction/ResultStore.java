@@ -0,0 +1,143 @@
+/****************************************************************/
+/* Class ResultStore                                            */
+/* Persistent store of the roles found for each definition, so  */
+/* that only new or changed definitions are classified again    */
+/*                                                              */
+/* Author: Vivian Silva                                         */
+/****************************************************************/
+
+package extraction;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ResultStore {
+
+	private final RecordStore store;
+	private final String version;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+
+	//The version identifies the rules and resources the results were computed with; results stored for another
+	//version are never returned
+	public ResultStore(String storefile, String version) throws IOException{
+
+		this.store = new RecordStore("classification results", storefile);
+		this.version = version;
+	}
+
+	private String getKey(String gloss, String pos){
+		return RecordStore.digest(version + "\n" + pos + "\n" + gloss);
+	}
+
+	//Return the sorted roles stored for a definition, or null if it is new or it or the rules changed since they were stored
+	public List<RoleSpan> get(String id, String gloss, String pos){
+
+		String key = getKey(gloss, pos);
+		String value = store.get(key);
+
+		if (value == null){
+			misses.incrementAndGet();
+
+			//The definition was classified before, with another text or version
+			String previous = store.peek("id\n" + pos + "\n" + id);
+			if (previous != null && !previous.equals(key)){
+				invalidations.incrementAndGet();
+			}
+			return null;
+		}
+		hits.incrementAndGet();
+
+		//One role per line
+		List<RoleSpan> roles = new ArrayList<RoleSpan>();
+		
+		if (value.length() > 0){
+			for (String line : value.split("\n")){
+				roles.add(RoleSpan.fromRecord(line));
+			}
+		}
+		return roles;
+	}
+
+	public boolean contains(String gloss, String pos){
+		return store.contains(getKey(gloss, pos));
+	}
+
+	public void put(String id, String gloss, String pos, List<RoleSpan> roles){
+
+		StringBuilder value = new StringBuilder();
+
+		for (RoleSpan role : roles){
+			if (value.length() > 0){
+				value.append('\n');
+			}
+			value.append(role.toRecord());
+		}
+
+		String key = getKey(gloss, pos);
+		store.put(key, value.toString());
+		store.put("id\n" + pos + "\n" + id, key);
+	}
+
+	//Digest of the compiled classes and the files the results depend on, to be used as the store version
+	public static String getVersion(List<Class<?>> classes, List<String> files, String... settings){
+
+		StringBuilder content = new StringBuilder();
+
+		for (Class<?> c : classes){
+			try{
+				InputStream in = c.getResourceAsStream(c.getSimpleName() + ".class");
+				content.append(in == null ? c.getName() : RecordStore.digest(read(in))).append('\n');
+			}
+			catch (IOException e){
+				e.printStackTrace();
+				content.append(c.getName()).append('\n');
+			}
+		}
+		//A file that can't be read still counts by its name, so that the other files keep their part in the version
+		for (String file : files){
+			try{
+				content.append(RecordStore.digest(read(new FileInputStream(file)))).append('\n');
+			}
+			catch (IOException e){
+				e.printStackTrace();
+				content.append(file).append('\n');
+			}
+		}
+		for (String setting : settings){
+			content.append(setting).append('\n');
+		}
+		return RecordStore.digest(content.toString());
+	}
+
+	private static String read(InputStream in) throws IOException{
+
+		try{
+			StringBuilder content = new StringBuilder();
+			byte[] buffer = new byte[8192];
+			int n;
+
+			while ((n = in.read(buffer)) > 0){
+				content.append(new String(buffer, 0, n, StandardCharsets.ISO_8859_1));
+			}
+			return content.toString();
+		}
+		finally{
+			in.close();
+		}
+	}
+
+	public void printStats(){
+
+		System.out.println("Classification results: " + hits.get() + " hits, " + misses.get() + " misses (" + invalidations.get()
+				+ " invalidated by a changed definition or rule set)");
+		store.printStats();
+	}
+}
@@ -0,0 +1,49 @@
+/****************************************************************/
+/* Enum Role                                                    */
+/* Semantic roles a definition fragment can be assigned         */
+/*                                                              */
+/* Author: Vivian Silva                                         */
+/****************************************************************/
+
+package extraction;
+
+public enum Role {
+
+	NONE("0"),
+	ACCESSORY_DETERMINER("accessory determiner"),
+	SUPERTYPE("supertype"),
+	SUPERTYPE_PARTICLE("supertype particle"),
+	DIFFERENTIA_QUALITY("differentia quality"),
+	DIFFERENTIA_EVENT("differentia event"),
+	ORIGIN_LOCATION("origin location"),
+	EVENT_LOCATION("event location"),
+	EVENT_TIME("event time"),
+	PURPOSE("purpose"),
+	ASSOCIATED_FACT("associated fact");
+
+	private final String label;
+
+	private Role(String label){
+		this.label = label;
+	}
+
+	//Return the role name as written in the IOB labels, with the given separator between words ("0" for no role)
+	public String getLabel(String separator){
+		return label.replaceAll(" ", separator);
+	}
+
+	public String getLabel(){
+		return label;
+	}
+
+	//Return the role with a name, or null if there's none
+	public static Role forLabel(String label){
+
+		for (Role role : values()){
+			if (role.label.equals(label)){
+				return role;
+			}
+		}
+		return null;
+	}
+}
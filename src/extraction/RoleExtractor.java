@@ -8,11 +8,24 @@
 
 package extraction;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 
 import edu.stanford.nlp.trees.Tree;
@@ -21,6 +34,46 @@ public class RoleExtractor {
 	
 	private static DefinitionParser dp;
 	
+	//Number of worker threads (1 runs sequentially) and of definitions each worker may have queued
+	private static int threads = 1;
+	private static int queueDepth = 64;
+	
+	//Number of definitions annotated together in the sequential mode (0 annotates them one by one) and annotation threads
+	private static int batchSize = 0;
+	private static int batchThreads = 4;
+	
+	//Roles found in previous runs, so that only new or changed definitions are classified (null if disabled)
+	private static String resultStoreFile = "";
+	private static ResultStore results;
+	
+	//Number of definitions written between checkpoints (0 writes them all at the end) and whether to resume an interrupted run
+	private static int checkpointInterval = 1000;
+	private static boolean resume = false;
+	
+	//Number of definitions classified before the rules assigning roles are ranked by their measured cost (0 keeps the
+	//order of the rules file)
+	private static int ruleWarmup = 1000;
+	
+	//Roles extracted; the others are written as O, and the rules finding only them are skipped
+	private static EnumSet<Role> roleMask = EnumSet.allOf(Role.class);
+	
+	//Roles found by the steps looking for the differentia, which also need the named entities
+	private static final EnumSet<Role> DIFFERENTIA_ROLES = EnumSet.of(Role.DIFFERENTIA_QUALITY, Role.DIFFERENTIA_EVENT, 
+			Role.ORIGIN_LOCATION, Role.EVENT_LOCATION, Role.EVENT_TIME, Role.PURPOSE, Role.ASSOCIATED_FACT);
+	
+	//Each worker thread classifies its definitions with its own parser; lexicons and models are shared
+	private static final ThreadLocal<DefinitionParser> workerParser = new ThreadLocal<DefinitionParser>(){
+		@Override
+		protected DefinitionParser initialValue(){
+			try{
+				return new DefinitionParser();
+			}
+			catch (IOException e){
+				throw new RuntimeException(e);
+			}
+		}
+	};
+	
 	public RoleExtractor(){
 		
 		try{
@@ -33,11 +86,12 @@ public class RoleExtractor {
 		
 	//Extract the semantic roles from a definition
     @SuppressWarnings("unused")
-	private static List<String> classifyDefinition(String definition, String pos){
+	private static List<RoleSpan> classifyDefinition(DefinitionParser dp, TokenOffsets offsets, String pos){
 		
-		List<String> roles = new ArrayList<String>();
+		List<RoleSpan> roles = new ArrayList<RoleSpan>();
+		String definition = offsets.getText();
 		
-		String expression = new String();
+		RuleSet rules = dp.getRules();
 		boolean hasDiffQual = false;
 		boolean hasDiffEvent = false;
 		
@@ -47,12 +101,16 @@ public class RoleExtractor {
 		String accDet = dp.getAccessoryDeterminer(definition);
 		
 		if (!accDet.equals("")){
-			roles.add(definition.indexOf(accDet.trim()) + "|" + accDet.trim() + "|accessory determiner");
-			definition = definition.replaceFirst(accDet.trim(), "");
+			addRole(roles, offsets, accDet.trim(), Role.ACCESSORY_DETERMINER);
 		}
+		definition = removeAccessoryDeterminer(dp, definition);
+		offsets.setOrigin(offsets.getText().length() - definition.length());
 		
 		Tree parseTree = dp.parse(definition).get(0);
 		
+		//Named entities, tagged over the whole definition the first time a rule asks for them
+		EntityIndex entities = dp.getEntityIndex(offsets);
+		
 		List<String> conjunctions = new ArrayList<String>();
 		int numConjunctions = 0;
 		
@@ -64,14 +122,13 @@ public class RoleExtractor {
 		//For verbs
 		if(pos.equals("v")){
 			String head = definition.split(" ")[0];
-			expression = "@/VB.?/";
-			Tree vbTree = dp.getFirstTreeMatch(expression, parseTree);
+			Tree vbTree = dp.getFirstTreeMatch(rules.get("verb_head"), parseTree);
 			List<String> firstVB = new ArrayList<String>();
 			
 			String nextWord = new String();
 			
 			if (vbTree != null){
-				firstVB = dp.getWordList(vbTree.yieldWords());
+				firstVB = dp.getWords(vbTree);
 				
 				//The first VB must also be the first word in the definition
 				if (firstVB.get(0).equals(head)){
@@ -82,16 +139,15 @@ public class RoleExtractor {
 				
 					do{
 						//Check if it is a phrasal verb
-						expression = "PRT $- (@/VB.?/ < /" + supertype + "/)";
-						Tree prtTree = dp.getFirstTreeMatch(expression, parseTree);
+						Tree prtTree = dp.getFirstTreeMatch(rules.get("verb_particle"), parseTree, supertype);
 						List<String> prt = new ArrayList<String>();
 				
 						if(prtTree != null){
-							prt = dp.getWordList(prtTree.yieldWords());
+							prt = dp.getWords(prtTree);
 							supertype += " " + dp.toExpression(prt);
 						}
 				
-						roles.add(definition.indexOf(supertype) + "|" + supertype + "|supertype");
+						addRole(roles, offsets, supertype, Role.SUPERTYPE);
 
 						//Look for additional supertypes separated by conjunctions
 						String toReplace = newDef.contains(supertype + " ") ? supertype + " " : supertype;
@@ -101,7 +157,7 @@ public class RoleExtractor {
 							nextWord = newDef.substring(0, newDef.indexOf(" "));
 					
 							if(nextWord.equals("or") || nextWord.equals("and")){
-								roles.add(definition.indexOf(newDef) + "|" + nextWord + "|0");
+								addRole(roles, offsets, definition.indexOf(newDef), nextWord, Role.NONE);
 								supertype = newDef.split(" ")[1];
 								newDef = newDef.replaceFirst(Pattern.quote(nextWord) + " ", "");
 							}
@@ -116,33 +172,30 @@ public class RoleExtractor {
 		
 		//For nouns or misclassified verbs
 		if(pos.equals("n") || !verbSTfound){
-			expression = "@NP !<< @NP !<- POS  << @/NN.?/ | <- @/NN.?/";
-			Tree supertypeTree = dp.getFirstTreeMatch(expression, parseTree);
+			Tree supertypeTree = dp.getFirstTreeMatch(rules.get("supertype_np"), parseTree);
 			
 			if (supertypeTree != null){
-				firstNP = dp.getWordList(supertypeTree.yieldWords());
+				firstNP = new ArrayList<String>(dp.getWords(supertypeTree));
 					
 				//Check whether the NP contains conjunctions
-				expression = "@CC";
-				List<Tree> conjTrees = dp.getAllTreeMatches(expression, supertypeTree);
+				List<Tree> conjTrees = dp.getAllTreeMatches(rules.get("conjunction"), supertypeTree);
 			
 				if(conjTrees.size() > 0){
 					for (Tree conjTree : conjTrees){
-						conjunctions.addAll(dp.getWordList(conjTree.yieldWords()));
+						conjunctions.addAll(dp.getWords(conjTree));
 						numConjunctions = conjunctions.size();
 					}
 				}
 			
 				//Strip off leading determiner (the leftmost child of the NP), if any
-				expression = "@DT  >>, @NP";
-				Tree detTree = dp.getFirstTreeMatch(expression, supertypeTree);
+				Tree detTree = dp.getFirstTreeMatch(rules.get("leading_determiner"), supertypeTree);
 				List<String> determiner = new ArrayList<String>();
 			
 				if (detTree != null){
-					determiner = dp.getWordList(detTree.yieldWords());
+					determiner = dp.getWords(detTree);
 				
 					firstNP.remove(0);
-					roles.add(definition.indexOf(determiner.get(0)) + "|" + determiner.get(0) + "|0");
+					addRole(roles, offsets, determiner.get(0), Role.NONE);
 				}
 			}
 			
@@ -152,12 +205,11 @@ public class RoleExtractor {
 			boolean skip = false;
 			if (supertype.length() == 0){
 				if (firstNP.size() > 0){
-					expression = "@/NN.?/";
-					Tree nounTree = dp.getFirstTreeMatch(expression, supertypeTree);
+					Tree nounTree = dp.getFirstTreeMatch(rules.get("first_noun"), supertypeTree);
 					List<String> firstNoun = new ArrayList<String>();
 				
 					if (nounTree != null){
-						firstNoun = dp.getWordList(nounTree.yieldWords());
+						firstNoun = dp.getWords(nounTree);
 						supertype = firstNoun.get(0);
 						skip = true;
 					}
@@ -166,17 +218,16 @@ public class RoleExtractor {
 					}
 				}
 				else{//If there's no NP in the sentence, get the rightmost word in the first ROOT's child
-					expression = "__ >>- (__ >, ROOT)";
-					Tree defaultTree = dp.getFirstTreeMatch(expression, parseTree);
+					Tree defaultTree = dp.getFirstTreeMatch(rules.get("default_supertype"), parseTree);
 					List<String> defaultST = new ArrayList<String>();
 					
 					if (defaultTree != null){
-						defaultST = dp.getWordList(defaultTree.yieldWords());
+						defaultST = dp.getWords(defaultTree);
 						supertype = defaultST.get(0);
 					}
 				}
 			}
-			roles.add(definition.indexOf(supertype) + "|" + supertype + "|supertype");
+			addRole(roles, offsets, supertype, Role.SUPERTYPE);
 			
 			if (skip){
 				String temp = dp.toExpression(firstNP).replaceFirst(Pattern.quote(supertype) + " ", "");
@@ -192,12 +243,12 @@ public class RoleExtractor {
 			int offset = lastWord.equals("or") ? 3 : (lastWord.equals("and") ? 4 : 0);
 				
 			while(numConjunctions > 0 && (lastWord.equals("or") || lastWord.equals("and"))){
-				roles.add(definition.indexOf(supertype)-offset + "|" + lastWord + "|0");
+				addRole(roles, offsets, definition.indexOf(supertype)-offset, lastWord, Role.NONE);
 				firstNP = dp.removeAllWords(firstNP, 1);
 			
 				String addSupertype = dp.getLongestEntry(firstNP, pos, false).replaceAll("_", " ");
 			
-				roles.add(definition.indexOf(addSupertype) + "|" + addSupertype + "|supertype");
+				addRole(roles, offsets, addSupertype, Role.SUPERTYPE);
 				firstNP = dp.removeAllWords(firstNP, addSupertype.split(" ").length);
 				lastWord = firstNP.size() > 1 ? firstNP.get(firstNP.size()-1) : addSupertype;
 				numConjunctions--;
@@ -207,17 +258,25 @@ public class RoleExtractor {
 			int pointer = definition.indexOf(dp.toExpression(firstNP));
 			for (int i=0; i < numConjunctions; i++){
 				if(firstNP.remove("or")){
-					roles.add(definition.indexOf("or", pointer) + "|" + "or|0");
+					addRole(roles, offsets, definition.indexOf("or", pointer), "or", Role.NONE);
 					pointer += definition.indexOf("or", pointer);	
 				}
 				else{
 					firstNP.remove("and");
-					roles.add(definition.indexOf("and", pointer) + "|" + "and|0");
+					addRole(roles, offsets, definition.indexOf("and", pointer), "and", Role.NONE);
 					pointer += definition.indexOf("and", pointer);
 				}
 			}
 		}
 		
+		//The steps below only find the differentia and the roles inside it
+		if (Collections.disjoint(roleMask, DIFFERENTIA_ROLES)){
+			findParticle(dp, offsets, roles, parseTree, definition, supertype);
+			applyRuleRoles(dp, offsets, entities, roles, parseTree, pos);
+			
+			return roles;
+		}
+		
 		//3. Look for differentia qualities to the left of the supertype
 		
 		//In the same NP as the supertype
@@ -234,10 +293,8 @@ public class RoleExtractor {
 				}
 				else{	
 					//Check whether it is not an origin location
-					Map<String, Vector<String>> namedEnts = dp.getNamedEntities(diffQual);
-					
-					if(namedEnts.containsKey("LOCATION")){
-						roles.add(definition.indexOf(diffQual) + "|" + diffQual + "|origin location");
+					if(entities.overlaps(entities.locate(diffQual), "LOCATION")){
+						addRole(roles, offsets, diffQual, Role.ORIGIN_LOCATION);
 					}
 					else{
 						//Attach a POS previously found, if any
@@ -245,7 +302,7 @@ public class RoleExtractor {
 							diffQual += "'s";
 							possessive = false;
 						}
-						roles.add(definition.indexOf(diffQual) + "|" + diffQual + "|differentia quality");
+						addRole(roles, offsets, diffQual, Role.DIFFERENTIA_QUALITY);
 					}
 						
 					firstNP = dp.removeAllWords(firstNP, diffQual.split(" ").length);
@@ -256,25 +313,21 @@ public class RoleExtractor {
 		
 		//In an NP without NNs, before the one that contains the supertype
 		String supertypeHead = supertype.contains(" ") ? supertype.substring(0, supertype.indexOf(' ')) : supertype;
-		expression = "@NP !<< @NP !<< @/NN.?/ $++ (@NP << /" + supertypeHead + "/)";
-		List<Tree> leftNPTrees = dp.getAllTreeMatches(expression, parseTree);
+		List<Tree> leftNPTrees = dp.getAllTreeMatches(rules.get("left_np"), parseTree, supertypeHead);
 		List<String> leftNP = new ArrayList<String>();
 		
 		if (leftNPTrees.size() > 0){
 			for (Tree leftNPTree : leftNPTrees){
-				leftNP = dp.getWordList(leftNPTree.yieldWords());
+				leftNP = dp.getWords(leftNPTree);
 				String diffQual = dp.toExpression(leftNP);
 				
 				//Check whether it is not an origin location
-				Map<String, Vector<String>> namedEnts = dp.getNamedEntities(diffQual);
-				
-				if(namedEnts.containsKey("LOCATION")){
-					roles.add(definition.indexOf(diffQual) + "|" + diffQual + "|origin location");
+				if(entities.overlaps(entities.locate(diffQual), "LOCATION")){
+					addRole(roles, offsets, diffQual, Role.ORIGIN_LOCATION);
 				}
 				else{
-					roles.add(definition.indexOf(diffQual) + "|" + diffQual + "|differentia quality");
+					addRole(roles, offsets, diffQual, Role.DIFFERENTIA_QUALITY);
 				}	
-				leftNP.clear();
 			
 				//Checks whether there is a conjunction separating this NP from the next one
 				int nextWordPos = definition.indexOf(diffQual) + diffQual.length() + 1;
@@ -283,7 +336,7 @@ public class RoleExtractor {
 					String nextWord = definition.substring(nextWordPos, definition.indexOf(" ", nextWordPos));
 			
 					if (nextWord.equals("or") || nextWord.equals("and")){
-						roles.add(nextWordPos + "|" + nextWord + "|0");
+						addRole(roles, offsets, nextWordPos, nextWord, Role.NONE);
 					}
 				}	
 			}	
@@ -297,45 +350,41 @@ public class RoleExtractor {
 		if (pos.equals("v")){
 			//PP, NP or VP (under S or not)
 			String supertypeTail = supertype.contains(" ") ? supertype.substring(supertype.lastIndexOf(' ')+1, supertype.length()) : supertype;
-			String aux = "[$- (PRT << /" + supertypeTail + "/) | $- (@/VB.?/ << /" + supertypeTail + "/)]";
-			expression = "@PP " + aux + " | @NP " + aux + " | @VP " + aux + " | S < @VP " + aux;
-			Tree diffQualTree = dp.getFirstTreeMatch(expression, parseTree);
+			Tree diffQualTree = dp.getFirstTreeMatch(rules.get("verb_complement"), parseTree, supertypeTail);
 			List<String> diffQual = new ArrayList<String>();
 
 			if(diffQualTree != null){
-				diffQual = dp.getWordList(diffQualTree.yieldWords());
+				diffQual = new ArrayList<String>(dp.getWords(diffQualTree));
 				verbDQFound = true;	
 				
 				//Look for a PP complementing the differentia quality
 				String lastWord = diffQual.get(diffQual.size()-1);
-				expression = "@PP $- (@NP << /" + lastWord + "/) | @PP $- (@PP << /" + lastWord + "/)";
-				Tree ppCompTree = dp.getFirstTreeMatch(expression, parseTree);
+				Tree ppCompTree = dp.getFirstTreeMatch(rules.get("pp_complement"), parseTree, lastWord);
 				
 				if(ppCompTree != null){
-					diffQual.addAll(dp.getWordList(ppCompTree.yieldWords()));
+					diffQual.addAll(dp.getWords(ppCompTree));
 				}
 				
-				roles.add(definition.indexOf(dp.toExpression(diffQual)) + "|" + dp.toExpression(diffQual) + "|differentia quality");
+				addRole(roles, offsets, dp.toExpression(diffQual), Role.DIFFERENTIA_QUALITY);
 			}
 			diffQual.clear();
 			
 			//ADJP or ADVP
-			expression = "@ADJP !<< @ADJP | @ADVP !<< @ADVP";
-			List<Tree> diffQualTrees = dp.getAllTreeMatches(expression, parseTree);
+			List<Tree> diffQualTrees = dp.getAllTreeMatches(rules.get("adjective_phrase"), parseTree);
 			
 			if(diffQualTrees.size() > 0){
 				verbDQFound = true;
 				for (Tree DQTree : diffQualTrees){
-					diffQual = dp.getWordList(DQTree.yieldWords());
+					diffQual = dp.getWords(DQTree);
 					//Check if there are multiple differentia qualities separated by conjunctions
 					while (diffQual.contains("or")){
 						String dq = dp.toExpression(diffQual).substring(dp.toExpression(diffQual).lastIndexOf("or")+3, dp.toExpression(diffQual).length());
-						roles.add(definition.indexOf(dq) + "|" + dq + "|differentia quality");
-						roles.add(definition.indexOf(dq)-3 + "|or|0");
+						addRole(roles, offsets, dq, Role.DIFFERENTIA_QUALITY);
+						addRole(roles, offsets, definition.indexOf(dq)-3, "or", Role.NONE);
 						
 						diffQual = dp.removeAllWords(diffQual, dq.split(" ").length+1);
 					}
-					roles.add(definition.indexOf(dp.toExpression(diffQual)) + "|" + dp.toExpression(diffQual) + "|differentia quality");
+					addRole(roles, offsets, dp.toExpression(diffQual), Role.DIFFERENTIA_QUALITY);
 					
 					//Check if there is a conjunction outside the differentia quality tree
 					int DQBegin = definition.indexOf(dp.toExpression(diffQual));
@@ -343,7 +392,7 @@ public class RoleExtractor {
 					if (DQBegin > 3){
 						String previousWord = definition.substring(DQBegin-3, DQBegin-1);
 						if (previousWord.equals("or")){
-							roles.add(definition.indexOf(dp.toExpression(diffQual))-3 + "|or|0");
+							addRole(roles, offsets, definition.indexOf(dp.toExpression(diffQual))-3, "or", Role.NONE);
 						}	
 					}
 				}	
@@ -354,20 +403,18 @@ public class RoleExtractor {
 		if(pos.equals("n") || !verbDQFound){
 			//In a PP after the NP that contains the supertype
 			String supertypeTail = supertype.contains(" ") ? supertype.substring(supertype.lastIndexOf(' ')+1, supertype.length()) : supertype;
-			expression = "@PP $- (@NP << /" + supertypeTail + "/)";
-			Tree rightDQTree = dp.getFirstTreeMatch(expression, parseTree);
+			Tree rightDQTree = dp.getFirstTreeMatch(rules.get("right_pp"), parseTree, supertypeTail);
 			List<String> rightDiffQual = new ArrayList<String>();
 		
 			if (rightDQTree != null){
-				rightDiffQual = dp.getWordList(rightDQTree.yieldWords());
+				rightDiffQual = new ArrayList<String>(dp.getWords(rightDQTree));
 
 				//5. Look for a purpose inside the PP
-				expression = "@PP <<, for | @VP <<, @TO";
-				Tree purpTree = dp.getFirstTreeMatch(expression, rightDQTree);
+				Tree purpTree = dp.getFirstTreeMatch(rules.get("purpose"), rightDQTree);
 				List<String> purpose = new ArrayList<String>();
 			
 				if (purpTree != null){
-					purpose = dp.getWordList(purpTree.yieldWords());
+					purpose = new ArrayList<String>(dp.getWords(purpTree));
 					rightDiffQual = dp.removeAllWords(rightDiffQual, purpose.size());
 				
 					//Check whether the purpose starts with the expression "in order to"
@@ -376,58 +423,58 @@ public class RoleExtractor {
 						purpose.add(1, "order");
 						rightDiffQual = dp.removeAllWords(rightDiffQual, 2);
 					}
-					roles.add(definition.indexOf(dp.toExpression(purpose)) + "|" + dp.toExpression(purpose) + "|purpose");
+					addRole(roles, offsets, dp.toExpression(purpose), Role.PURPOSE);
 				}
 			
 				//6. Look for a differentia event inside the PP
-				expression = "SBAR";
-				Tree sbarTree = dp.getFirstTreeMatch(expression, rightDQTree);			
+				Tree sbarTree = dp.getFirstTreeMatch(rules.get("sbar"), rightDQTree);			
 				List<String> diffEvent = new ArrayList<String>();
 			
 				if (sbarTree != null){
-					diffEvent = dp.getWordList(sbarTree.yieldWords());
+					diffEvent = dp.getWords(sbarTree);
 				
 					if(! dp.toExpression(diffEvent).startsWith("in order to")){
 						hasDiffEvent = true;
 				
 						//7. Look for an associated fact separated by a CC in the SBAR
-						expression = "@SBAR $- (@CC << and) | @VP $- (@CC << and) | S $- (@CC << and) < @VP";
-						Tree assocFactTree = dp.getFirstTreeMatch(expression, sbarTree);
+						Tree assocFactTree = dp.getFirstTreeMatch(rules.get("associated_fact"), sbarTree);
 						List<String> sbarAssocFact = new ArrayList<String>();
 					
 						if (assocFactTree != null){
-							sbarAssocFact = dp.getWordList(assocFactTree.yieldWords());
+							sbarAssocFact = dp.getWords(assocFactTree);
 					
-							roles.add(definition.indexOf(dp.toExpression(sbarAssocFact)) + "|" + dp.toExpression(sbarAssocFact) + "|associated fact");
+							addRole(roles, offsets, dp.toExpression(sbarAssocFact), Role.ASSOCIATED_FACT);
 							diffEvent = dp.removeAllWords(diffEvent, sbarAssocFact.size());
 					
 							String conjunction = diffEvent.get(diffEvent.size()-1);
 							int conjIndex = definition.indexOf(conjunction, definition.indexOf(dp.toExpression(diffEvent)));
-							roles.add(conjIndex + "|" + conjunction + "|0");
+							addRole(roles, offsets, conjIndex, conjunction, Role.NONE);
 							diffEvent = dp.removeAllWords(diffEvent, 1);
 					
 							rightDiffQual = dp.removeAllWords(rightDiffQual, sbarAssocFact.size()+1);
 						}
 					
-						Map<String, Vector<String>> namedEnts = dp.getNamedEntities(dp.toExpression(diffEvent));
+						int[] eventSpan = entities.locate(dp.toExpression(diffEvent));
 						int locExpSize = 0;
 						int timeExpSize = 0;
+						
+						//Locations and times are PPs of the SBAR, so the entities are only needed if it has any
+						boolean hasEntityPP = dp.canMatch(rules.get("entity_pp"), sbarTree);
 
 						//8. Look for event locations inside the differentia event
-						if (namedEnts.containsKey("LOCATION")){
-							Vector<String> locations = namedEnts.get("LOCATION");
+						if (hasEntityPP && entities.overlaps(eventSpan, "LOCATION")){
+							Vector<String> locations = entities.getWords(eventSpan, "LOCATION");
 							String currentLoc = new String();
 						
 							for (String location: locations){
-								expression = "@PP << /" + location + "/";
-								Tree ppLocTree = dp.getFirstTreeMatch(expression, sbarTree);						
+								Tree ppLocTree = dp.getFirstTreeMatch(rules.get("entity_pp"), sbarTree, location);						
 								List<String> eventLoc = new ArrayList<String>();
 							
 								if (ppLocTree != null){
-									eventLoc = dp.getWordList(ppLocTree.yieldWords());
+									eventLoc = dp.getWords(ppLocTree);
 								
 									if(!dp.toExpression(eventLoc).equals(currentLoc)){
-										roles.add(definition.indexOf(dp.toExpression(eventLoc)) + "|" + dp.toExpression(eventLoc) + "|event location");
+										addRole(roles, offsets, dp.toExpression(eventLoc), Role.EVENT_LOCATION);
 										currentLoc = dp.toExpression(eventLoc);
 										locExpSize += eventLoc.size();
 									
@@ -439,20 +486,19 @@ public class RoleExtractor {
 						}
 					
 						//9. Look for event times inside the differentia event
-						if (namedEnts.containsKey("DATE") || namedEnts.containsKey("TIME")){
-							Vector<String> times = namedEnts.containsKey("DATE") ? namedEnts.get("DATE") : namedEnts.get("TIME");
+						if (hasEntityPP && (entities.overlaps(eventSpan, "DATE") || entities.overlaps(eventSpan, "TIME"))){
+							Vector<String> times = entities.overlaps(eventSpan, "DATE") ? entities.getWords(eventSpan, "DATE") : entities.getWords(eventSpan, "TIME");
 							String currentTime = new String();
 						
 							for (String time: times){
-								expression = "@PP << /" + time + "/";
-								Tree ppTimeTree = dp.getFirstTreeMatch(expression, sbarTree);						
+								Tree ppTimeTree = dp.getFirstTreeMatch(rules.get("entity_pp"), sbarTree, time);						
 								List<String> eventTime = new ArrayList<String>();
 							
 								if (ppTimeTree != null){
-									eventTime = dp.getWordList(ppTimeTree.yieldWords());
+									eventTime = dp.getWords(ppTimeTree);
 								
 									if(!dp.toExpression(eventTime).equals(currentTime)){
-										roles.add(definition.indexOf(dp.toExpression(eventTime)) + "|" + dp.toExpression(eventTime) + "|event time");
+										addRole(roles, offsets, dp.toExpression(eventTime), Role.EVENT_TIME);
 										currentTime = dp.toExpression(eventTime);
 										timeExpSize += eventTime.size();
 									
@@ -463,75 +509,71 @@ public class RoleExtractor {
 							}
 						}
 				
-						roles.add(definition.indexOf(dp.toExpression(diffEvent)) + "|" + dp.toExpression(diffEvent) + "|differentia event");
+						addRole(roles, offsets, dp.toExpression(diffEvent), Role.DIFFERENTIA_EVENT);
 						rightDiffQual = dp.removeAllWords(rightDiffQual, diffEvent.size()+locExpSize+timeExpSize);
 					}	
 				}
 			
 				if (rightDiffQual.size() > 0){
 					//10. Check if the PP can be classified as an origin location
-					Map<String, Vector<String>> namedEnts = dp.getNamedEntities(dp.toExpression(rightDiffQual));
+					int[] ppSpan = entities.locate(dp.toExpression(rightDiffQual));
 				
-					if(namedEnts.containsKey("LOCATION")){
-						roles.add(definition.indexOf(dp.toExpression(rightDiffQual)) + "|" + dp.toExpression(rightDiffQual) + "|origin location");
+					if(entities.overlaps(ppSpan, "LOCATION")){
+						addRole(roles, offsets, dp.toExpression(rightDiffQual), Role.ORIGIN_LOCATION);
 					}
 					else{
 						//11. Check if the PP can be classified as an even time
-						if(namedEnts.containsKey("DATE") || namedEnts.containsKey("TIME")){
-							roles.add(definition.indexOf(dp.toExpression(rightDiffQual)) + "|" + dp.toExpression(rightDiffQual) + "|event time");
+						if(entities.overlaps(ppSpan, "DATE") || entities.overlaps(ppSpan, "TIME")){
+							addRole(roles, offsets, dp.toExpression(rightDiffQual), Role.EVENT_TIME);
 						}
 						else{
 							//Only for verbs, look for a PP complementing the differentia quality
 							if (pos.equals("v")){
 								String lastWord = rightDiffQual.get(rightDiffQual.size()-1);
-								expression = "@PP $- (@NP << /" + lastWord + "/) | @PP $- (@PP << /" + lastWord + "/)";
-								Tree ppCompTree = dp.getFirstTreeMatch(expression, parseTree);
+								Tree ppCompTree = dp.getFirstTreeMatch(rules.get("pp_complement"), parseTree, lastWord);
 							
 								if(ppCompTree != null){
-									rightDiffQual.addAll(dp.getWordList(ppCompTree.yieldWords()));
+									rightDiffQual.addAll(dp.getWords(ppCompTree));
 								}
 							}
-							roles.add(definition.indexOf(dp.toExpression(rightDiffQual)) + "|" + dp.toExpression(rightDiffQual) + "|differentia quality");
+							addRole(roles, offsets, dp.toExpression(rightDiffQual), Role.DIFFERENTIA_QUALITY);
 						}
 					}
 				}	
 			}
 		
 			//12. Look for differentia events (outside a differentia quality PP) -- only for nouns
-			expression = "SBAR !>> @PP | @VP !<<, @TO !>>(@VP <<, @TO) !<<, for !>> (@PP <<, for)";
-			Tree sbarTree = dp.getFirstTreeMatch(expression, parseTree);		
+			Tree sbarTree = dp.getFirstTreeMatch(rules.get("differentia_event"), parseTree);		
 			List<String> diffEvent = new ArrayList<String>();
 			
 			if (sbarTree != null && !hasDiffEvent){
-				diffEvent = dp.getWordList(sbarTree.yieldWords());
+				diffEvent = dp.getWords(sbarTree);
 				
 				if (!dp.toExpression(diffEvent).startsWith("in order to")){
 					hasDiffEvent = true;
 					
 					//13. Look for an associated fact separated by a CC ("and") in the SBAR
-					expression = "@SBAR $- (@CC << and) | @VP $- (@CC << and) | S $- (@CC << and) < @VP";
-					Tree assocFactTree = dp.getFirstTreeMatch(expression, sbarTree);				
+					Tree assocFactTree = dp.getFirstTreeMatch(rules.get("associated_fact"), sbarTree);				
 					List<String> sbarAssocFact = new ArrayList<String>();
 					
 					if (assocFactTree != null){
-						sbarAssocFact = dp.getWordList(assocFactTree.yieldWords());
+						sbarAssocFact = dp.getWords(assocFactTree);
 						
-						roles.add(definition.indexOf(dp.toExpression(sbarAssocFact)) + "|" + dp.toExpression(sbarAssocFact) + "|associated fact");
+						addRole(roles, offsets, dp.toExpression(sbarAssocFact), Role.ASSOCIATED_FACT);
 						diffEvent = dp.removeAllWords(diffEvent, sbarAssocFact.size());
 						
 						String conjunction = diffEvent.get(diffEvent.size()-1);
 						int conjIndex = definition.indexOf(conjunction, definition.indexOf(dp.toExpression(diffEvent)));
-						roles.add(conjIndex + "|" + conjunction + "|0");
+						addRole(roles, offsets, conjIndex, conjunction, Role.NONE);
 						diffEvent = dp.removeAllWords(diffEvent, 1);
 					}
 				
 					//14. Look for a purpose inside the SBAR
-					expression = "@PP <<, for | @VP <<, @TO";
-					Tree purpTree = dp.getFirstTreeMatch(expression, sbarTree);
+					Tree purpTree = dp.getFirstTreeMatch(rules.get("purpose"), sbarTree);
 					List<String> sbarPurpose = new ArrayList<String>();
 						
 					if (purpTree != null){
-						sbarPurpose = dp.getWordList(purpTree.yieldWords());
+						sbarPurpose = new ArrayList<String>(dp.getWords(purpTree));
 						diffEvent = dp.removeAllWords(diffEvent, sbarPurpose.size());
 						
 						//Check whether the purpose starts with the expression "in order to"
@@ -540,26 +582,26 @@ public class RoleExtractor {
 							sbarPurpose.add(1, "order");
 							diffEvent = dp.removeAllWords(diffEvent, 2);
 						}
-						roles.add(definition.indexOf(dp.toExpression(sbarPurpose)) + "|" + dp.toExpression(sbarPurpose) + "|purpose");
+						addRole(roles, offsets, dp.toExpression(sbarPurpose), Role.PURPOSE);
 					}
 						
-					Map<String, Vector<String>> namedEnts = dp.getNamedEntities(dp.toExpression(diffEvent));
+					int[] eventSpan = entities.locate(dp.toExpression(diffEvent));
+					boolean hasEntityPP = dp.canMatch(rules.get("entity_pp"), sbarTree);
 					
 					//15. Look for event locations inside the differentia event
-					if (namedEnts.containsKey("LOCATION")){
-						Vector<String> locations = namedEnts.get("LOCATION");
+					if (hasEntityPP && entities.overlaps(eventSpan, "LOCATION")){
+						Vector<String> locations = entities.getWords(eventSpan, "LOCATION");
 						String currentLoc = new String();
 							
 						for (String location: locations){
-							expression = "@PP << /" + location + "/";
-							Tree ppLocTree = dp.getFirstTreeMatch(expression, sbarTree);
+							Tree ppLocTree = dp.getFirstTreeMatch(rules.get("entity_pp"), sbarTree, location);
 							List<String> eventLoc = new ArrayList<String>();
 							
 							if (ppLocTree != null){
-								eventLoc = dp.getWordList(ppLocTree.yieldWords());
+								eventLoc = dp.getWords(ppLocTree);
 									
 								if(!dp.toExpression(eventLoc).equals(currentLoc)){
-									roles.add(definition.indexOf(dp.toExpression(eventLoc)) + "|" + dp.toExpression(eventLoc) + "|event location");
+									addRole(roles, offsets, dp.toExpression(eventLoc), Role.EVENT_LOCATION);
 									currentLoc = dp.toExpression(eventLoc);
 										
 									String temp = dp.toExpression(diffEvent).replaceFirst(Pattern.quote(dp.toExpression(eventLoc)), "");
@@ -570,20 +612,19 @@ public class RoleExtractor {
 					}
 					
 					//16. Look for event times inside the differentia event
-					if (namedEnts.containsKey("DATE") || namedEnts.containsKey("TIME")){
-						Vector<String> times = namedEnts.containsKey("DATE") ? namedEnts.get("DATE") : namedEnts.get("TIME");
+					if (hasEntityPP && (entities.overlaps(eventSpan, "DATE") || entities.overlaps(eventSpan, "TIME"))){
+						Vector<String> times = entities.overlaps(eventSpan, "DATE") ? entities.getWords(eventSpan, "DATE") : entities.getWords(eventSpan, "TIME");
 						String currentTime = new String();
 						
 						for (String time: times){
-							expression = "@PP << /" + time + "/";
-							Tree ppTimeTree = dp.getFirstTreeMatch(expression, sbarTree);						
+							Tree ppTimeTree = dp.getFirstTreeMatch(rules.get("entity_pp"), sbarTree, time);						
 							List<String> eventTime = new ArrayList<String>();
 							
 							if (ppTimeTree != null){
-								eventTime = dp.getWordList(ppTimeTree.yieldWords());
+								eventTime = dp.getWords(ppTimeTree);
 								
 								if(!dp.toExpression(eventTime).equals(currentTime)){
-									roles.add(definition.indexOf(dp.toExpression(eventTime)) + "|" + dp.toExpression(eventTime) + "|event time");
+									addRole(roles, offsets, dp.toExpression(eventTime), Role.EVENT_TIME);
 									currentTime = dp.toExpression(eventTime);
 									
 									String temp = dp.toExpression(diffEvent).replaceFirst(Pattern.quote(dp.toExpression(eventTime)), "");
@@ -592,20 +633,33 @@ public class RoleExtractor {
 							}	
 						}
 					}	
-					roles.add(definition.indexOf(dp.toExpression(diffEvent)) + "|" + dp.toExpression(diffEvent) + "|differentia event");
+					addRole(roles, offsets, dp.toExpression(diffEvent), Role.DIFFERENTIA_EVENT);
 				}
 			}
 		}	
 		
 		//16. Look for a particle
+		findParticle(dp, offsets, roles, parseTree, definition, supertype);
+		
+		//17. Apply the rules of the rules file that assign a role by themselves
+		applyRuleRoles(dp, offsets, entities, roles, parseTree, pos);
+		
+		return roles;
+	}
+	
+	//Look for the particle of a phrasal verb supertype, whose dependencies are only computed if the role is extracted
+	private static void findParticle(DefinitionParser dp, TokenOffsets offsets, List<RoleSpan> roles, Tree parseTree, 
+			String definition, String supertype){
+		
+		if (!roleMask.contains(Role.SUPERTYPE_PARTICLE)){
+			return;
+		}
 		
-		//Phrasal verb particle
-		expression = "PRT !$- @/VB.?/";
-		Tree prtTree = dp.getFirstTreeMatch(expression, parseTree);
+		Tree prtTree = dp.getFirstTreeMatch(dp.getRules().get("particle"), parseTree);
 		List<String> prt = new ArrayList<String>();
 		
 		if(prtTree != null){
-			prt = dp.getWordList(prtTree.yieldWords());
+			prt = dp.getWords(prtTree);
 			String particle = prt.get(0);
 			List<String> dependencies = dp.getDependencies(definition, particle);
 			
@@ -616,31 +670,347 @@ public class RoleExtractor {
 					String governor = dependency.split(";")[0].substring(0, dependency.split(";")[0].indexOf('/'));
 					
 					if (governor.equals(supertype)){
-						roles.add(definition.indexOf(particle) + "|" + particle + "|supertype particle");
+						addRole(roles, offsets, particle, Role.SUPERTYPE_PARTICLE);
 						break;
 					}
 				}
 			}
 		}
-		return roles;
+	}
+	
+	//Apply the rules of the rules file that assign a role by themselves, skipping the roles not extracted
+	private static void applyRuleRoles(DefinitionParser dp, TokenOffsets offsets, EntityIndex entities, List<RoleSpan> roles, 
+			Tree parseTree, String pos){
+		
+		for (Rule rule : dp.getRules().getEmitters()){
+			if (roleMask.contains(rule.getRole()) && rule.appliesTo(pos) && dp.canMatch(rule, parseTree)){
+				List<Tree> matches = new ArrayList<Tree>();
+				
+				if (rule.isAll()){
+					matches = dp.getAllTreeMatches(rule, parseTree);
+				}
+				else{
+					Tree match = dp.getFirstTreeMatch(rule, parseTree);
+					
+					if (match != null){
+						matches.add(match);
+					}
+				}
+				
+				for (Tree match : matches){
+					String fragment = dp.toExpression(dp.getWords(match));
+					
+					//The entities are checked last, once the match is known
+					if (rule.getEntity() == null || entities.overlaps(entities.locate(fragment), rule.getEntity())){
+						addRole(roles, offsets, fragment, rule.getRole());
+					}
+				}
+			}
+		}
+	}
+	
+	//Add a role found in the definition, if it is extracted and could be located; the others are written as O, and
+	//are never located so that they don't take the tokens an extracted role would be located at
+	private static void addRole(List<RoleSpan> roles, TokenOffsets offsets, String fragment, Role role){
+		
+		if (roleMask.contains(role)){
+			addRole(roles, offsets.locate(fragment, role));
+		}
+	}
+	
+	//Add a role found at a known position of the definition, if it is extracted
+	private static void addRole(List<RoleSpan> roles, TokenOffsets offsets, int position, String fragment, Role role){
+		
+		if (roleMask.contains(role)){
+			addRole(roles, offsets.at(position, fragment, role));
+		}
+	}
+	
+	private static void addRole(List<RoleSpan> roles, RoleSpan role){
+		
+		if (role != null){
+			roles.add(role);
+		}
+	}
+	
+	//Return the sorted roles of a definition of the data file, taking them from the result store if it was
+	//already classified with the current rules
+	private static List<RoleSpan> classify(DefinitionParser dp, DefinitionRecord def){
+		
+		String id = def.getId();
+		String pos = def.getPOS();
+		String gloss = def.getGloss();
+		
+		if (results != null){
+			List<RoleSpan> stored = results.get(id, gloss, pos);
+			
+			if (stored != null){
+				return stored;
+			}
+		}
+		
+		TokenOffsets offsets = new TokenOffsets(gloss);
+		List<RoleSpan> sorted = dp.sort(offsets, classifyDefinition(dp, offsets, pos));
+		
+		if (results != null){
+			results.put(id, gloss, pos, sorted);
+		}
+		return sorted;
+	}
+	
+	//Open the result store; its version covers the rule classes and the resources they use, so that changing any of
+	//them classifies every definition again
+	private static void openResultStore(){
+		
+		if (resultStoreFile.length() == 0){
+			return;
+		}
+		
+		List<Class<?>> classes = new ArrayList<Class<?>>();
+		classes.add(RoleExtractor.class);
+		classes.add(DefinitionParser.class);
+		classes.add(DefinitionContext.class);
+		classes.add(LexiconTrie.class);
+		classes.add(PrefixMatcher.class);
+		classes.add(PatternRegistry.class);
+		classes.add(TokenOffsets.class);
+		classes.add(SpanAligner.class);
+		classes.add(TreeIndex.class);
+		classes.add(EntityIndex.class);
+		classes.add(CompactTree.class);
+		classes.add(Rule.class);
+		classes.add(RuleSet.class);
+		classes.add(Role.class);
+		classes.add(RoleSpan.class);
+		classes.add(WordNetLexicon.class);
+		classes.add(LexiconImage.class);
+		classes.add(LookupCache.class);
+		classes.add(MatchMemo.class);
+		
+		List<String> files = new ArrayList<String>();
+		files.add(LexiconCompiler.NO_PLURAL_FILE);
+		files.add(LexiconCompiler.PLURAL_EXCEPTIONS_FILE);
+		files.add(LexiconCompiler.ACCESSORY_DETERMINERS_FILE);
+		files.add(RuleSet.getFile());
+		
+		//WordNet entries decide the supertypes and qualities
+		for (String index : new String[]{"index.noun", "index.verb", "index.adj", "index.adv"}){
+			files.add(new File(DefinitionParser.getWordNetPath(), index).getPath());
+		}
+		
+		try{
+			results = new ResultStore(resultStoreFile, ResultStore.getVersion(classes, files, DefinitionContext.ANNOTATORS, 
+					DefinitionParser.getNERModel(), DefinitionParser.getWordNetPath(), DefinitionParser.getMatchEngine(), 
+					roleMask.toString()));
+		}
+		catch (IOException e){
+			e.printStackTrace();
+		}
+	}
+	
+	//Return the part of the definition that is parsed, without its accessory determiner
+	private static String removeAccessoryDeterminer(DefinitionParser dp, String definition){
+		
+		String accDet = dp.getAccessoryDeterminer(definition);
+		
+		return accDet.equals("") ? definition : definition.replaceFirst(accDet.trim(), "");
+	}
+	
+	//Return the roles listed in the roles parameter, separated by commas, or every role for "all"
+	private static EnumSet<Role> getRoleMask(String list){
+		
+		if (list.equals("all")){
+			return EnumSet.allOf(Role.class);
+		}
+		
+		EnumSet<Role> mask = EnumSet.of(Role.NONE);
+		
+		for (String label : list.split(",")){
+			Role role = Role.forLabel(label.trim());
+			
+			if (role == null){
+				throw new IllegalArgumentException("Unknown role in the roles parameter: " + label.trim());
+			}
+			mask.add(role);
+		}
+		return mask;
+	}
+	
+	//Read the parallelism, checkpoint and role parameters from the conf file; "-threads N", "-queue N" and "-batch N" on the
+	//command line override them and "-resume" continues an interrupted run from its last checkpoint
+	private static void loadParams(String args[]){
+		
+		try{
+	    	BufferedReader br = new BufferedReader(new FileReader("conf/params.txt"));
+			
+			try{
+				String line = null;
+					
+				while ((line = br.readLine()) != null) {
+					if (!line.startsWith("#")){
+						if (line.startsWith("threads = ")){
+							threads = Integer.parseInt(line.substring(line.indexOf('=')+2).trim());
+						}
+						else if (line.startsWith("queue_depth = ")){
+							queueDepth = Integer.parseInt(line.substring(line.indexOf('=')+2).trim());
+						}
+						else if (line.startsWith("batch_size = ")){
+							batchSize = Integer.parseInt(line.substring(line.indexOf('=')+2).trim());
+						}
+						else if (line.startsWith("batch_threads = ")){
+							batchThreads = Integer.parseInt(line.substring(line.indexOf('=')+2).trim());
+						}
+						else if (line.startsWith("result_store = ")){
+							resultStoreFile = line.substring(line.indexOf('=')+2).trim();
+						}
+						else if (line.startsWith("checkpoint_interval = ")){
+							checkpointInterval = Integer.parseInt(line.substring(line.indexOf('=')+2).trim());
+						}
+						else if (line.startsWith("rule_warmup = ")){
+							ruleWarmup = Integer.parseInt(line.substring(line.indexOf('=')+2).trim());
+						}
+						else if (line.startsWith("roles = ")){
+							roleMask = getRoleMask(line.substring(line.indexOf('=')+2).trim());
+						}
+					}
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+    	} catch (FileNotFoundException f){
+			f.printStackTrace();
+		}
+		
+		for (int i=0; i < args.length; i++){
+			if (args[i].equals("-resume")){
+				resume = true;
+			}
+		}
+		for (int i=0; i+1 < args.length; i++){
+			if (args[i].equals("-threads")){
+				threads = Integer.parseInt(args[i+1]);
+			}
+			else if (args[i].equals("-queue")){
+				queueDepth = Integer.parseInt(args[i+1]);
+			}
+			else if (args[i].equals("-batch")){
+				batchSize = Integer.parseInt(args[i+1]);
+			}
+		}
+		
+		if (threads <= 0){
+			threads = Runtime.getRuntime().availableProcessors();
+		}
+		queueDepth = Math.max(1, queueDepth);
+	}
+	
+	//Classify the definitions in a pool of workers, writing the results in the original order; at most
+	//queue_depth definitions per worker are waiting or in progress at any time
+	private static void classifyParallel(Iterator<DefinitionRecord> definitions, CheckpointWriter output) throws IOException{
+		
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		Deque<Future<List<RoleSpan>>> pending = new ArrayDeque<Future<List<RoleSpan>>>();
+		int submitted = 0;
+		
+		try{
+			while (definitions.hasNext()){
+				final DefinitionRecord def = definitions.next();
+				
+				pending.add(pool.submit(new Callable<List<RoleSpan>>(){
+					public List<RoleSpan> call(){
+						return classify(workerParser.get(), def);
+					}
+				}));
+				submitted++;
+				
+				//The warm-up definitions are finished before the rules are ranked, so no definition sees both orders
+				if (submitted == ruleWarmup){
+					while (!pending.isEmpty()){
+						output.add(pending.poll().get());
+					}
+					dp.getRules().rankEmitters();
+				}
+				
+				if (pending.size() >= threads * queueDepth){
+					output.add(pending.poll().get());
+				}
+			}
+			while (!pending.isEmpty()){
+				output.add(pending.poll().get());
+			}
+		}
+		catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		catch (ExecutionException e){
+			throw new RuntimeException(e.getCause());
+		}
+		finally{
+			pool.shutdownNow();
+		}
 	}
 	
 	public static void main(String args[]){
 		
 		new RoleExtractor();
+		loadParams(args);
+		openResultStore();
 		
-		List<String> definitions = dp.loadDataFile("input/definitions.txt");
-		List<List<String>> classified = new ArrayList<List<String>>();
-		
-		System.out.println("Classifying definitions (this may take some time...)");
-		for (String def : definitions){
-			String[] tokens = def.split("\\|");
-			String pos = tokens[1];
-			String gloss = tokens[3];
-
-			classified.add(dp.sort(gloss, classifyDefinition(gloss, pos)));
+		try{
+			DefinitionReader definitions = dp.openDataFile("input/definitions.txt");
+			CheckpointWriter output = new CheckpointWriter(dp, "output/classified.txt", checkpointInterval, resume);
+			definitions.skip(output.getResumePoint());
+			
+			System.out.println("Classifying definitions (this may take some time...)");
+			int classified = 0;
+			
+			if (threads > 1){
+				System.out.println("Using " + threads + " worker threads");
+				classifyParallel(definitions, output);
+			}
+			else{
+				while (definitions.hasNext()){
+					
+					//Read the next batch of definitions and annotate the ones to be classified before running the rules over them
+					List<DefinitionRecord> window = new ArrayList<DefinitionRecord>();
+					List<String> batch = new ArrayList<String>();
+					
+					while (definitions.hasNext() && window.size() < Math.max(1, batchSize)){
+						DefinitionRecord def = definitions.next();
+						window.add(def);
+						
+						if (batchSize > 1 && (results == null || !results.contains(def.getGloss(), def.getPOS()))){
+							batch.add(removeAccessoryDeterminer(dp, def.getGloss()));
+						}
+					}
+					if (!batch.isEmpty()){
+						dp.annotateBatch(batch, batchThreads);
+					}
+					
+					for (DefinitionRecord def : window){
+						output.add(classify(dp, def));
+						
+						if (++classified == ruleWarmup){
+							dp.getRules().rankEmitters();
+						}
+					}
+				}
+			}
+			definitions.close();
+			output.close();
+		}
+		catch (IOException e){
+			e.printStackTrace();
 		}
 		
-		dp.IOBPrint(classified, "output/classified.txt");	
+		DefinitionParser.printPipelineStats();
+		DefinitionParser.printCacheStats();
+		PatternRegistry.printStats();
+		RuleSet.getShared().printStats();
+		
+		if (results != null){
+			results.printStats();
+		}
 	}
 }
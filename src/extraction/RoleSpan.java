@@ -0,0 +1,78 @@
+/****************************************************************/
+/* Class RoleSpan                                               */
+/* A fragment of a definition assigned a semantic role, located */
+/* by its tokens and characters in the definition               */
+/*                                                              */
+/* Author: Vivian Silva                                         */
+/****************************************************************/
+
+package extraction;
+
+public class RoleSpan {
+
+	private final Role role;
+	private final String text;
+
+	//Token range [startToken, endToken) and character range [startChar, endChar) in the definition
+	private final int startToken;
+	private final int endToken;
+	private final int startChar;
+	private final int endChar;
+
+	public RoleSpan(Role role, String text, int startToken, int endToken, int startChar, int endChar){
+
+		this.role = role;
+		this.text = text;
+		this.startToken = startToken;
+		this.endToken = endToken;
+		this.startChar = startChar;
+		this.endChar = endChar;
+	}
+
+	public Role getRole(){
+		return role;
+	}
+
+	public String getText(){
+		return text;
+	}
+
+	public int getStartToken(){
+		return startToken;
+	}
+
+	public int getEndToken(){
+		return endToken;
+	}
+
+	public int getStartChar(){
+		return startChar;
+	}
+
+	public int getEndChar(){
+		return endChar;
+	}
+
+	//Number of definition tokens the span covers
+	public int size(){
+		return endToken - startToken;
+	}
+
+	//Encode the span in a single line, e.g. to be stored
+	public String toRecord(){
+		return role.name() + "|" + startToken + "|" + endToken + "|" + startChar + "|" + endChar + "|" + text;
+	}
+
+	public static RoleSpan fromRecord(String record){
+
+		String[] fields = record.split("\\|", 6);
+
+		return new RoleSpan(Role.valueOf(fields[0]), fields[5], Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+				Integer.parseInt(fields[3]), Integer.parseInt(fields[4]));
+	}
+
+	@Override
+	public String toString(){
+		return text + ":" + role.getLabel();
+	}
+}
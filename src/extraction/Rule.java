@@ -0,0 +1,97 @@
+/****************************************************************/
+/* Class Rule                                                   */
+/* An extraction rule of the rules file: its compiled pattern,  */
+/* the labels it requires and the role it may assign            */
+/*                                                              */
+/* Author: Vivian Silva                                         */
+/****************************************************************/
+
+package extraction;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class Rule {
+
+	private final String name;
+	private final String expression;
+	private final PatternRegistry pattern;
+
+	//Role given to the words of the matches, or null if the rule is only used by the extraction steps
+	private final Role role;
+	private final boolean all;
+	private final String pos;
+	private final String entity;
+
+	private final AtomicLong queries = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong nanos = new AtomicLong();
+
+	//The pos is "n", "v" or null for both; the entity is a type of EntityIndex.TYPES or null
+	public Rule(String name, String expression, String requirement, Role role, boolean all, String pos, String entity){
+
+		this.name = name;
+		this.expression = expression;
+		this.pattern = PatternRegistry.require(expression, requirement);
+		this.role = role;
+		this.all = all;
+		this.pos = pos;
+		this.entity = entity;
+	}
+
+	public String getName(){
+		return name;
+	}
+
+	public String getExpression(){
+		return expression;
+	}
+
+	public PatternRegistry getPattern(){
+		return pattern;
+	}
+
+	public Role getRole(){
+		return role;
+	}
+
+	//Whether all the matches are taken, instead of the first one
+	public boolean isAll(){
+		return all;
+	}
+
+	public String getEntity(){
+		return entity;
+	}
+
+	//Whether the rule applies to definitions of a POS ("n" or "v")
+	public boolean appliesTo(String pos){
+		return this.pos == null || this.pos.equals(pos);
+	}
+
+	//Count a query of the rule and the time it took
+	public void record(long time, boolean hit){
+
+		queries.incrementAndGet();
+		nanos.addAndGet(time);
+
+		if (hit){
+			hits.incrementAndGet();
+		}
+	}
+
+	public long getNanos(){
+		return nanos.get();
+	}
+
+	public long getHits(){
+		return hits.get();
+	}
+
+	public void printStats(){
+
+		long queried = queries.get();
+
+		System.out.println("Rule [" + name + "]: " + queried + " queries, " + hits.get() + " with matches, " + nanos.get() / 1000000
+				+ " ms (" + (queried > 0 ? nanos.get() / queried / 1000 : 0) + " us per query)");
+	}
+}
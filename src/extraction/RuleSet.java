@@ -0,0 +1,244 @@
+/****************************************************************/
+/* Class RuleSet                                                */
+/* Extraction rules read from the rules file and compiled once, */
+/* shared by all the parser instances                           */
+/*                                                              */
+/* Author: Vivian Silva                                         */
+/****************************************************************/
+
+package extraction;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class RuleSet {
+
+	private static String rulesFile = "conf/rules.txt";
+	private static RuleSet shared;
+
+	//Keys a rule may have
+	private static final List<String> KEYS = Arrays.asList("rule", "pattern", "requires", "role", "match", "pos", "entity");
+
+	private final Map<String, Rule> rules = new LinkedHashMap<String, Rule>();
+
+	//Rules assigning a role by themselves, in the order they are run; replaced as a whole when they are ranked
+	private volatile List<Rule> emitters = new ArrayList<Rule>();
+
+	private RuleSet(String file){
+
+		try{
+			BufferedReader br = new BufferedReader(new FileReader(file));
+
+			try{
+				String line = null;
+				Map<String, String> fields = new LinkedHashMap<String, String>();
+
+				while ((line = br.readLine()) != null) {
+					if (line.startsWith("#") || line.trim().length() == 0){
+						continue;
+					}
+					if (line.startsWith("rule = ") && !fields.isEmpty()){
+						add(fields);
+						fields.clear();
+					}
+					if (line.indexOf(" = ") <= 0 || !KEYS.contains(line.substring(0, line.indexOf(" = ")))){
+						throw new IllegalArgumentException("Invalid line in " + file + ", expected one of " + KEYS + " followed by \" = \": " 
+								+ line);
+					}
+					if (fields.containsKey(line.substring(0, line.indexOf(" = ")))){
+						throw new IllegalArgumentException("Key repeated in a rule of " + file + ": " + line);
+					}
+					fields.put(line.substring(0, line.indexOf(" = ")), line.substring(line.indexOf('=')+2));
+				}
+				if (!fields.isEmpty()){
+					add(fields);
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			br.close();
+		} catch (FileNotFoundException f){
+			f.printStackTrace();
+		} catch (IOException e){
+			e.printStackTrace();
+		}
+
+		//Rules needing the named entities run after the others, keeping the order of the file otherwise
+		Collections.sort(emitters, new Comparator<Rule>(){
+			public int compare(Rule r1, Rule r2){
+				return Boolean.compare(r1.getEntity() != null, r2.getEntity() != null);
+			}
+		});
+	}
+
+	//Compile a rule from its fields
+	private void add(Map<String, String> fields){
+
+		String name = fields.get("rule");
+		String expression = fields.get("pattern");
+
+		if (name == null || expression == null){
+			throw new IllegalArgumentException("Rule with no name or pattern in " + rulesFile + ": " + fields);
+		}
+
+		Role role = null;
+		if (fields.containsKey("role")){
+			role = Role.forLabel(fields.get("role").trim());
+
+			if (role == null){
+				throw new IllegalArgumentException("Unknown role in rule " + name + ": " + fields.get("role"));
+			}
+			if (expression.contains("=" + PatternRegistry.WORD_SLOT)){
+				throw new IllegalArgumentException("Rule " + name + " assigns a role, so its pattern can't have word slots: " + expression);
+			}
+		}
+
+		String pos = null;
+		if (fields.containsKey("pos")){
+			String value = fields.get("pos").trim();
+
+			if (!value.equals("noun") && !value.equals("verb")){
+				throw new IllegalArgumentException("Unknown pos in rule " + name + " (noun or verb): " + value);
+			}
+			pos = value.equals("noun") ? "n" : "v";
+		}
+
+		String match = fields.containsKey("match") ? fields.get("match").trim() : "first";
+		if (!match.equals("first") && !match.equals("all")){
+			throw new IllegalArgumentException("Unknown match in rule " + name + " (first or all): " + match);
+		}
+
+		String entity = fields.containsKey("entity") ? fields.get("entity").trim() : null;
+		if (entity != null && !EntityIndex.TYPES.contains(entity)){
+			throw new IllegalArgumentException("Unknown entity type in rule " + name + ": " + entity);
+		}
+
+		if (rules.containsKey(name.trim())){
+			throw new IllegalArgumentException("Rule " + name.trim() + " defined twice in " + rulesFile);
+		}
+
+		Rule rule = new Rule(name.trim(), expression, fields.get("requires"), role, match.equals("all"), pos, entity);
+		rules.put(rule.getName(), rule);
+
+		if (role != null){
+			emitters.add(rule);
+		}
+	}
+
+	//Return the rules, reading and compiling the rules file the first time they are requested
+	public static synchronized RuleSet getShared(){
+
+		if (shared == null){
+			//Read the conf file to get the rules file
+			try{
+				BufferedReader br = new BufferedReader(new FileReader("conf/params.txt"));
+
+				try{
+					String line = null;
+
+					while ((line = br.readLine()) != null) {
+						if (line.startsWith("rules_file = ")){
+							rulesFile = line.substring(line.indexOf('=')+2).trim();
+						}
+					}
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+				br.close();
+			} catch (FileNotFoundException f){
+				f.printStackTrace();
+			} catch (IOException e){
+				e.printStackTrace();
+			}
+			shared = new RuleSet(rulesFile);
+		}
+		return shared;
+	}
+
+	//Return the file the rules are read from
+	public static String getFile(){
+
+		getShared();
+		return rulesFile;
+	}
+
+	//Return a rule by its name
+	public Rule get(String name){
+
+		Rule rule = rules.get(name);
+
+		if (rule == null){
+			throw new IllegalArgumentException("No rule named " + name + " in " + rulesFile);
+		}
+		return rule;
+	}
+
+	public boolean contains(String name){
+		return rules.containsKey(name);
+	}
+
+	public Collection<Rule> getAll(){
+		return rules.values();
+	}
+
+	//Return the rules assigning a role by themselves, in the order they must be run
+	public List<Rule> getEmitters(){
+		return emitters;
+	}
+
+	//Order the rules assigning a role by the matches they found per nanosecond so far, the most productive first,
+	//still leaving the ones needing the named entities last. Called once after the warm-up definitions, so that
+	//every definition classified afterwards runs them in the same order
+	public synchronized void rankEmitters(){
+
+		if (emitters.size() < 2){
+			return;
+		}
+		List<Rule> ranked = new ArrayList<Rule>(emitters);
+
+		Collections.sort(ranked, new Comparator<Rule>(){
+			public int compare(Rule r1, Rule r2){
+				int entity = Boolean.compare(r1.getEntity() != null, r2.getEntity() != null);
+				return entity != 0 ? entity : Double.compare(getRate(r2), getRate(r1));
+			}
+		});
+		emitters = ranked;
+
+		StringBuilder names = new StringBuilder();
+		for (Rule rule : ranked){
+			names.append(names.length() > 0 ? ", " : "").append(rule.getName());
+		}
+		System.out.println("Rules assigning roles ranked by matches per ms: " + names);
+	}
+
+	//Matches found per nanosecond spent, 0 for a rule never queried
+	private static double getRate(Rule rule){
+		return rule.getNanos() > 0 ? (double) rule.getHits() / rule.getNanos() : 0;
+	}
+
+	//Print the counters of every rule, the most expensive first
+	public void printStats(){
+
+		List<Rule> sorted = new ArrayList<Rule>(rules.values());
+
+		Collections.sort(sorted, new Comparator<Rule>(){
+			public int compare(Rule r1, Rule r2){
+				return Long.compare(r2.getNanos(), r1.getNanos());
+			}
+		});
+
+		for (Rule rule : sorted){
+			rule.printStats();
+		}
+	}
+}
@@ -0,0 +1,103 @@
+/****************************************************************/
+/* Class SpanAligner                                            */
+/* Orders the role spans found in a definition and fills the    */
+/* gaps between them, so that every token gets a role           */
+/*                                                              */
+/* Author: Vivian Silva                                         */
+/****************************************************************/
+
+package extraction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SpanAligner {
+
+	private final AtomicLong definitions = new AtomicLong();
+	private final AtomicLong overlaps = new AtomicLong();
+	private final AtomicLong invalid = new AtomicLong();
+	private final AtomicLong fallbacks = new AtomicLong();
+
+	//Return the spans ordered by position, with the uncovered tokens grouped in spans with no role. When spans
+	//overlap, the one found first is kept and the others are counted as overlaps. Runs in O(tokens + spans)
+	public List<RoleSpan> align(TokenOffsets offsets, List<RoleSpan> spans){
+
+		definitions.incrementAndGet();
+
+		int length = offsets.size();
+
+		//First valid span starting at each token
+		RoleSpan[] starting = new RoleSpan[length];
+		int placed = 0;
+
+		for (RoleSpan span : spans){
+			if (span == null || span.getStartToken() < 0 || span.getEndToken() > length || span.size() <= 0){
+				invalid.incrementAndGet();
+			}
+			else if (starting[span.getStartToken()] != null){
+				overlaps.incrementAndGet();
+			}
+			else{
+				starting[span.getStartToken()] = span;
+				placed++;
+			}
+		}
+
+		//A span covering the whole definition says nothing if other roles were found in it
+		if (length > 0 && starting[0] != null && starting[0].size() == length && spans.size() > 1){
+			starting[0] = null;
+			placed--;
+			overlaps.incrementAndGet();
+		}
+
+		//Same for a span covering everything after the accessory determiner, if other roles were found in it
+		if (length > 0 && starting[0] != null && starting[0].getRole() == Role.ACCESSORY_DETERMINER){
+			int next = starting[0].getEndToken();
+
+			if (next < length && starting[next] != null && starting[next].size() == length - next && spans.size() > 2){
+				starting[next] = null;
+				placed--;
+				overlaps.incrementAndGet();
+			}
+		}
+
+		if (spans.size() > 0 && placed == 0){
+			fallbacks.incrementAndGet();
+		}
+
+		List<RoleSpan> aligned = new ArrayList<RoleSpan>();
+		int token = 0;
+
+		while (token < length){
+			RoleSpan span = starting[token];
+
+			if (span != null){
+				aligned.add(span);
+
+				//Spans starting inside this one are dropped
+				for (int i=token+1; i < span.getEndToken(); i++){
+					if (starting[i] != null){
+						overlaps.incrementAndGet();
+					}
+				}
+				token = span.getEndToken();
+			}
+			else{
+				int start = token;
+
+				while (token < length && starting[token] == null){
+					token++;
+				}
+				aligned.add(offsets.fill(start, token));
+			}
+		}
+		return aligned;
+	}
+
+	public void printStats(){
+
+		System.out.println("Span alignment: " + definitions.get() + " definitions, " + overlaps.get() + " overlapping spans dropped, "
+				+ invalid.get() + " invalid spans, " + fallbacks.get() + " definitions left with no role");
+	}
+}
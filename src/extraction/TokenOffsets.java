@@ -0,0 +1,164 @@
+/****************************************************************/
+/* Class TokenOffsets                                           */
+/* Token offset table of a definition, used to locate the       */
+/* fragments assigned a role, computed once per definition      */
+/*                                                              */
+/* Author: Vivian Silva                                         */
+/****************************************************************/
+
+package extraction;
+
+public class TokenOffsets {
+
+	private final String text;
+	private final String[] tokens;
+	private final int[] starts;
+
+	//Tokens already covered by a located span
+	private final boolean[] claimed;
+
+	//Position in the definition of the text the rules work on (the definition without its accessory determiner)
+	private int origin = 0;
+
+	//Tokens are separated by single spaces, as in the IOB output
+	public TokenOffsets(String text){
+
+		this.text = text;
+		this.tokens = text.split(" ");
+		this.starts = new int[tokens.length];
+		this.claimed = new boolean[tokens.length];
+
+		int start = 0;
+		for (int i=0; i < tokens.length; i++){
+			starts[i] = start;
+			start += tokens[i].length() + 1;
+		}
+	}
+
+	public String getText(){
+		return text;
+	}
+
+	public String[] getTokens(){
+		return tokens;
+	}
+
+	public int size(){
+		return tokens.length;
+	}
+
+	//Set where the text the rules work on starts; positions given to at() are relative to it
+	public void setOrigin(int origin){
+		this.origin = origin;
+	}
+
+	public int getOrigin(){
+		return origin;
+	}
+
+	//Return the token that contains a character position
+	public int tokenAt(int position){
+
+		int low = 0;
+		int high = tokens.length - 1;
+
+		while (low < high){
+			int mid = (low + high + 1) >>> 1;
+
+			if (starts[mid] <= position){
+				low = mid;
+			}
+			else{
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	//Locate a fragment at word boundaries, preferring its first occurrence whose tokens aren't taken by another
+	//span yet; returns null if the fragment doesn't occur
+	public RoleSpan locate(String fragment, Role role){
+
+		if (fragment.length() == 0){
+			return null;
+		}
+
+		int first = -1;
+
+		for (int p = text.indexOf(fragment, origin); p >= 0; p = text.indexOf(fragment, p + 1)){
+			if (isBoundary(p) && isBoundary(p + fragment.length())){
+				if (first < 0){
+					first = p;
+				}
+				if (!isClaimed(tokenAt(p), tokenAt(p + fragment.length() - 1) + 1)){
+					return claim(p, fragment, role);
+				}
+			}
+		}
+		return first < 0 ? null : claim(first, fragment, role);
+	}
+
+	//Build the span of a fragment at a known position of the text the rules work on. If the fragment isn't at that
+	//position as whole words, it is located as locate() does; returns null if it doesn't occur
+	public RoleSpan at(int position, String fragment, Role role){
+
+		position += origin;
+
+		if (fragment.length() == 0){
+			return null;
+		}
+		if (position < origin || !text.startsWith(fragment, position) || !isBoundary(position) 
+				|| !isBoundary(position + fragment.length())){
+			return locate(fragment, role);
+		}
+		return claim(position, fragment, role);
+	}
+
+	//Build the span covering tokens [start, end) with no role
+	public RoleSpan fill(int start, int end){
+
+		StringBuilder filler = new StringBuilder();
+
+		for (int i=start; i < end; i++){
+			if (i > start){
+				filler.append(' ');
+			}
+			filler.append(tokens[i]);
+		}
+
+		int startChar = start < tokens.length ? starts[start] : text.length();
+		int endChar = end > start ? starts[end-1] + tokens[end-1].length() : startChar;
+
+		return new RoleSpan(Role.NONE, filler.toString(), start, end, startChar, endChar);
+	}
+
+	private RoleSpan claim(int position, String fragment, Role role){
+
+		int start = tokenAt(position);
+		int end = tokenAt(position + fragment.length() - 1) + 1;
+
+		for (int i=start; i < end; i++){
+			claimed[i] = true;
+		}
+		return new RoleSpan(role, fragment, start, end, position, position + fragment.length());
+	}
+
+	private boolean isClaimed(int start, int end){
+
+		for (int i=start; i < end; i++){
+			if (claimed[i]){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	//A fragment may start or end at a position if it is next to a space, the text limits or a character that isn't part of a word
+	private boolean isBoundary(int position){
+
+		if (position <= 0 || position >= text.length()){
+			return true;
+		}
+		return !Character.isLetterOrDigit(text.charAt(position - 1)) || !Character.isLetterOrDigit(text.charAt(position));
+	}
+}
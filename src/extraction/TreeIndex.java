@@ -0,0 +1,502 @@
+/****************************************************************/
+/* Class TreeIndex                                              */
+/* Indexes a parse tree in a single walk and answers the TRegex */
+/* expressions of the extraction rules from the index           */
+/*                                                              */
+/* Author: Vivian Silva                                         */
+/****************************************************************/
+
+package extraction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import edu.stanford.nlp.trees.PennTreebankLanguagePack;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreebankLanguagePack;
+
+public class TreeIndex {
+
+	//Rules answered from the index; any other expression is left to TRegex
+	private static final int VB_NODE = 0;
+	private static final int VERB_PARTICLE = 1;
+	private static final int SUPERTYPE_NP = 2;
+	private static final int SUPERTYPE_NP_POS = 3;
+	private static final int CONJUNCTION = 4;
+	private static final int LEADING_DT = 5;
+	private static final int NN_NODE = 6;
+	private static final int DEFAULT_SUPERTYPE = 7;
+	private static final int LEFT_NP = 8;
+	private static final int VERB_COMPLEMENT = 9;
+	private static final int PP_COMPLEMENT = 10;
+	private static final int ADJP_ADVP = 11;
+	private static final int RIGHT_PP = 12;
+	private static final int PURPOSE = 13;
+	private static final int SBAR_NODE = 14;
+	private static final int ASSOCIATED_FACT = 15;
+	private static final int WORD_PP = 16;
+	private static final int DIFF_EVENT = 17;
+	private static final int PARTICLE = 18;
+	private static final int POS_NODE = 19;
+	private static final int RULES = 20;
+
+	private static final Map<String, Integer> rules = new HashMap<String, Integer>();
+
+	//Expression each rule of the rules file is implemented for, by rule name
+	private static final Map<String, String> ruleExpressions = new HashMap<String, String>();
+
+	static{
+		add("verb_head", "@/VB.?/", VB_NODE);
+		add("verb_particle", "PRT $- (@/VB.?/ < __=word)", VERB_PARTICLE);
+		add("supertype_np", "@NP !<< @NP !<- POS  << @/NN.?/ | <- @/NN.?/", SUPERTYPE_NP);
+		add("supertype_np_possessive", "@NP !<< @NP << @/NN.?/ | <- @/NN.?/", SUPERTYPE_NP_POS);
+		add("conjunction", "@CC", CONJUNCTION);
+		add("leading_determiner", "@DT  >>, @NP", LEADING_DT);
+		add("first_noun", "@/NN.?/", NN_NODE);
+		add("default_supertype", "__ >>- (__ >, ROOT)", DEFAULT_SUPERTYPE);
+		add("left_np", "@NP !<< @NP !<< @/NN.?/ $++ (@NP << __=word)", LEFT_NP);
+		add("verb_complement", "@PP [$- (PRT << __=word1) | $- (@/VB.?/ << __=word2)] | @NP [$- (PRT << __=word3) | $- (@/VB.?/ << __=word4)]"
+				+ " | @VP [$- (PRT << __=word5) | $- (@/VB.?/ << __=word6)] | S < @VP [$- (PRT << __=word7) | $- (@/VB.?/ << __=word8)]",
+				VERB_COMPLEMENT);
+		add("pp_complement", "@PP $- (@NP << __=word1) | @PP $- (@PP << __=word2)", PP_COMPLEMENT);
+		add("adjective_phrase", "@ADJP !<< @ADJP | @ADVP !<< @ADVP", ADJP_ADVP);
+		add("right_pp", "@PP $- (@NP << __=word)", RIGHT_PP);
+		add("purpose", "@PP <<, for | @VP <<, @TO", PURPOSE);
+		add("sbar", "SBAR", SBAR_NODE);
+		add("associated_fact", "@SBAR $- (@CC << and) | @VP $- (@CC << and) | S $- (@CC << and) < @VP", ASSOCIATED_FACT);
+		add("entity_pp", "@PP << __=word", WORD_PP);
+		add("differentia_event", "SBAR !>> @PP | @VP !<<, @TO !>>(@VP <<, @TO) !<<, for !>> (@PP <<, for)", DIFF_EVENT);
+		add("particle", "PRT !$- @/VB.?/", PARTICLE);
+		add("possessive", "POS", POS_NODE);
+	}
+
+	private static void add(String name, String expression, int rule){
+
+		rules.put(expression, rule);
+		ruleExpressions.put(name, expression);
+	}
+
+	//Check that the rules file still has every rule implemented by the index, with the pattern it was implemented
+	//for, so that editing or renaming a rule doesn't silently leave it to TRegex
+	public static void checkRules(RuleSet ruleSet){
+
+		for (Map.Entry<String, String> implemented : ruleExpressions.entrySet()){
+			Rule rule = ruleSet.contains(implemented.getKey()) ? ruleSet.get(implemented.getKey()) : null;
+
+			if (rule == null || !rule.getExpression().equals(implemented.getValue())){
+				throw new IllegalStateException("Rule " + implemented.getKey() + " is " + (rule == null ? "missing from " : "changed in ") 
+						+ RuleSet.getFile() + " but the visitor match engine implements it as [" + implemented.getValue() + "]: "
+						+ "update TreeIndex or set match_engine = tregex");
+			}
+		}
+	}
+
+	//Node features: basic categories (@X), exact labels (X) and words, as TRegex tests them
+	private static final int NP = 1;
+	private static final int NN = 1 << 1;
+	private static final int VB = 1 << 2;
+	private static final int ADJP = 1 << 3;
+	private static final int ADVP = 1 << 4;
+	private static final int PP = 1 << 5;
+	private static final int VP = 1 << 6;
+	private static final int CC = 1 << 7;
+	private static final int DT = 1 << 8;
+	private static final int TO = 1 << 9;
+	private static final int SBAR = 1 << 10;
+	private static final int PRT = 1 << 11;
+	private static final int S = 1 << 12;
+	private static final int ROOT = 1 << 13;
+	private static final int POS = 1 << 14;
+	private static final int FOR = 1 << 15;
+	private static final int AND = 1 << 16;
+	private static final int BASIC_SBAR = 1 << 17;
+
+	private static final TreebankLanguagePack tlp = new PennTreebankLanguagePack();
+	private static final Pattern vbPattern = Pattern.compile("VB.?");
+	private static final Pattern nnPattern = Pattern.compile("NN.?");
+
+	private static final AtomicLong indexed = new AtomicLong();
+	private static final AtomicLong visited = new AtomicLong();
+	private static final AtomicLong queries = new AtomicLong();
+
+	//Nodes in preorder, the order TRegex visits them in, with the position after each subtree, the parent and
+	//the immediate left sister (-1 if none)
+	private Tree[] nodes;
+	private String[] values;
+	private int[] end;
+	private int[] parent;
+	private int[] previous;
+	private int size = 0;
+
+	//Features of each node, of all its descendants and of its leftmost descendants (first child, its first child...)
+	private int[] features;
+	private int[] below;
+	private int[] leftmost;
+
+	private final Map<Tree, Integer> positions = new IdentityHashMap<Tree, Integer>();
+
+	//Nodes whose own label passes the first node description of each rule, in preorder
+	private final int[][] candidates = new int[RULES][];
+	private final int[] counts = new int[RULES];
+
+	public TreeIndex(Tree tree){
+
+		nodes = new Tree[64];
+		values = new String[64];
+		end = new int[64];
+		parent = new int[64];
+		previous = new int[64];
+		features = new int[64];
+		below = new int[64];
+		leftmost = new int[64];
+
+		for (int rule=0; rule < RULES; rule++){
+			candidates[rule] = new int[8];
+		}
+
+		visit(tree, -1, -1);
+
+		indexed.incrementAndGet();
+		visited.addAndGet(size);
+	}
+
+	//Whether an expression is answered from the index
+	public static boolean supports(String expression){
+		return rules.containsKey(expression);
+	}
+
+	//Expressions answered from the index
+	public static List<String> getExpressions(){
+		return new ArrayList<String>(rules.keySet());
+	}
+
+	//Whether a tree is the indexed tree or one of its subtrees
+	public boolean contains(Tree tree){
+		return positions.containsKey(tree);
+	}
+
+	//Record a node and its subtree, returning the features found in the subtree
+	private int visit(Tree tree, int parentNode, int previousNode){
+
+		int node = size++;
+		ensureCapacity(size);
+
+		String value = tree.value();
+		nodes[node] = tree;
+		values[node] = value;
+		parent[node] = parentNode;
+		previous[node] = previousNode;
+		features[node] = getFeatures(value);
+		positions.put(tree, node);
+
+		for (int rule=0; rule < RULES; rule++){
+			if (isCandidate(rule, features[node])){
+				if (counts[rule] == candidates[rule].length){
+					candidates[rule] = Arrays.copyOf(candidates[rule], counts[rule] * 2);
+				}
+				candidates[rule][counts[rule]++] = node;
+			}
+		}
+
+		int descendants = 0;
+		int child = -1;
+		Tree[] children = tree.children();
+
+		for (int i=0; i < children.length; i++){
+			int next = size;
+			descendants |= visit(children[i], node, child);
+
+			if (i == 0){
+				leftmost[node] = features[next] | leftmost[next];
+			}
+			child = next;
+		}
+
+		below[node] = descendants;
+		end[node] = size;
+
+		return descendants | features[node];
+	}
+
+	private void ensureCapacity(int capacity){
+
+		if (capacity > nodes.length){
+			int length = nodes.length * 2;
+
+			nodes = Arrays.copyOf(nodes, length);
+			values = Arrays.copyOf(values, length);
+			end = Arrays.copyOf(end, length);
+			parent = Arrays.copyOf(parent, length);
+			previous = Arrays.copyOf(previous, length);
+			features = Arrays.copyOf(features, length);
+			below = Arrays.copyOf(below, length);
+			leftmost = Arrays.copyOf(leftmost, length);
+		}
+	}
+
+	private static int getFeatures(String value){
+
+		if (value == null){
+			return 0;
+		}
+
+		int found = 0;
+		String category = tlp.basicCategory(value);
+
+		found |= category.equals("NP") ? NP : 0;
+		found |= nnPattern.matcher(category).find() ? NN : 0;
+		found |= vbPattern.matcher(category).find() ? VB : 0;
+		found |= category.equals("ADJP") ? ADJP : 0;
+		found |= category.equals("ADVP") ? ADVP : 0;
+		found |= category.equals("PP") ? PP : 0;
+		found |= category.equals("VP") ? VP : 0;
+		found |= category.equals("CC") ? CC : 0;
+		found |= category.equals("DT") ? DT : 0;
+		found |= category.equals("TO") ? TO : 0;
+		found |= category.equals("SBAR") ? BASIC_SBAR : 0;
+		found |= value.equals("SBAR") ? SBAR : 0;
+		found |= value.equals("PRT") ? PRT : 0;
+		found |= value.equals("S") ? S : 0;
+		found |= value.equals("ROOT") ? ROOT : 0;
+		found |= value.equals("POS") ? POS : 0;
+		found |= value.equals("for") ? FOR : 0;
+		found |= value.equals("and") ? AND : 0;
+
+		return found;
+	}
+
+	//Check the first node description of a rule
+	private static boolean isCandidate(int rule, int f){
+
+		switch (rule){
+			case VB_NODE: return (f & VB) != 0;
+			case VERB_PARTICLE: return (f & PRT) != 0;
+			case SUPERTYPE_NP: return (f & NP) != 0;
+			case SUPERTYPE_NP_POS: return (f & NP) != 0;
+			case CONJUNCTION: return (f & CC) != 0;
+			case LEADING_DT: return (f & DT) != 0;
+			case NN_NODE: return (f & NN) != 0;
+			case DEFAULT_SUPERTYPE: return true;
+			case LEFT_NP: return (f & NP) != 0;
+			case VERB_COMPLEMENT: return (f & (PP | NP | VP | S)) != 0;
+			case PP_COMPLEMENT: return (f & PP) != 0;
+			case ADJP_ADVP: return (f & (ADJP | ADVP)) != 0;
+			case RIGHT_PP: return (f & PP) != 0;
+			case PURPOSE: return (f & (PP | VP)) != 0;
+			case SBAR_NODE: return (f & SBAR) != 0;
+			case ASSOCIATED_FACT: return (f & (BASIC_SBAR | VP | S)) != 0;
+			case WORD_PP: return (f & PP) != 0;
+			case DIFF_EVENT: return (f & (SBAR | VP)) != 0;
+			case PARTICLE: return (f & PRT) != 0;
+			case POS_NODE: return (f & POS) != 0;
+			default: return false;
+		}
+	}
+
+	//Check the whole rule on a node of the subtree rooted at root; relations never reach above the root, as with
+	//a TRegex matcher built for that subtree
+	private boolean matches(int rule, int n, int root, String word){
+
+		int f = features[n];
+		int left = n == root ? -1 : previous[n];
+
+		switch (rule){
+			case VB_NODE:
+			case CONJUNCTION:
+			case NN_NODE:
+			case SBAR_NODE:
+			case POS_NODE:
+				return true;
+
+			case VERB_PARTICLE:
+				return left >= 0 && (features[left] & VB) != 0 && childContains(left, word);
+
+			case SUPERTYPE_NP:
+				return ((below[n] & NP) == 0 && (lastChild(n) < 0 || (features[lastChild(n)] & POS) == 0) && (below[n] & NN) != 0)
+						|| (lastChild(n) >= 0 && (features[lastChild(n)] & NN) != 0);
+
+			case SUPERTYPE_NP_POS:
+				return ((below[n] & NP) == 0 && (below[n] & NN) != 0) || (lastChild(n) >= 0 && (features[lastChild(n)] & NN) != 0);
+
+			case LEADING_DT:
+				for (int x = n; x != root && previous[x] < 0; x = parent[x]){
+					if ((features[parent[x]] & NP) != 0){
+						return true;
+					}
+				}
+				return false;
+
+			case DEFAULT_SUPERTYPE:
+				for (int x = n; x != root && end[x] == end[parent[x]]; x = parent[x]){
+					int a = parent[x];
+
+					if (a != root && previous[a] < 0 && (features[parent[a]] & ROOT) != 0){
+						return true;
+					}
+				}
+				return false;
+
+			case LEFT_NP:
+				if ((below[n] & (NP | NN)) != 0 || n == root){
+					return false;
+				}
+				for (int s = end[n]; s < end[parent[n]]; s = end[s]){
+					if ((features[s] & NP) != 0 && descendantContains(s, word)){
+						return true;
+					}
+				}
+				return false;
+
+			case VERB_COMPLEMENT:
+				//The bracketed relations apply to the S too, not to its VP
+				if ((f & (PP | NP | VP)) == 0 && ((f & S) == 0 || !hasChild(n, VP))){
+					return false;
+				}
+				return isVerbOrParticle(left, word);
+
+			case PP_COMPLEMENT:
+				return left >= 0 && (features[left] & (NP | PP)) != 0 && descendantContains(left, word);
+
+			case ADJP_ADVP:
+				return ((f & ADJP) != 0 && (below[n] & ADJP) == 0) || ((f & ADVP) != 0 && (below[n] & ADVP) == 0);
+
+			case RIGHT_PP:
+				return left >= 0 && (features[left] & NP) != 0 && descendantContains(left, word);
+
+			case PURPOSE:
+				return ((f & PP) != 0 && (leftmost[n] & FOR) != 0) || ((f & VP) != 0 && (leftmost[n] & TO) != 0);
+
+			case ASSOCIATED_FACT:
+				if (left < 0 || (features[left] & CC) == 0 || (below[left] & AND) == 0){
+					return false;
+				}
+				if ((f & (BASIC_SBAR | VP)) != 0){
+					return true;
+				}
+				return (f & S) != 0 && (below[n] & VP) != 0 && hasChild(n, VP);
+
+			case WORD_PP:
+				return descendantContains(n, word);
+
+			case DIFF_EVENT:
+				if ((f & SBAR) != 0 && !hasAncestor(n, root, PP, 0)){
+					return true;
+				}
+				return (f & VP) != 0 && (leftmost[n] & (TO | FOR)) == 0 && !hasAncestor(n, root, VP, TO) && !hasAncestor(n, root, PP, FOR);
+
+			case PARTICLE:
+				return left < 0 || (features[left] & VB) == 0;
+
+			default:
+				return false;
+		}
+	}
+
+	private int lastChild(int n){
+
+		int last = -1;
+		for (int c = n+1; c < end[n]; c = end[c]){
+			last = c;
+		}
+		return last;
+	}
+
+	private boolean hasChild(int n, int feature){
+
+		for (int c = n+1; c < end[n]; c = end[c]){
+			if ((features[c] & feature) != 0){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	//Whether an ancestor below the root has a feature and, if given, another one among its leftmost descendants
+	private boolean hasAncestor(int n, int root, int feature, int leftFeature){
+
+		for (int x = n; x != root; ){
+			x = parent[x];
+
+			if ((features[x] & feature) != 0 && (leftFeature == 0 || (leftmost[x] & leftFeature) != 0)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	//A node immediately to the left that is a PRT or a verb dominating the word
+	private boolean isVerbOrParticle(int n, String word){
+		return n >= 0 && (features[n] & (PRT | VB)) != 0 && descendantContains(n, word);
+	}
+
+	private boolean childContains(int n, String word){
+
+		for (int c = n+1; c < end[n]; c = end[c]){
+			if (PatternRegistry.labelContains(values[c], word)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean descendantContains(int n, String word){
+
+		for (int d = n+1; d < end[n]; d++){
+			if (PatternRegistry.labelContains(values[d], word)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	//Return the first node of a subtree of the indexed tree matching a rule expression, or null
+	public Tree firstMatch(String expression, Tree tree, String word){
+
+		queries.incrementAndGet();
+
+		int rule = rules.get(expression);
+		int root = positions.get(tree);
+
+		for (int i = firstCandidate(rule, root); i < counts[rule] && candidates[rule][i] < end[root]; i++){
+			if (matches(rule, candidates[rule][i], root, word)){
+				return nodes[candidates[rule][i]];
+			}
+		}
+		return null;
+	}
+
+	//Return all the nodes of a subtree of the indexed tree matching a rule expression
+	public List<Tree> allMatches(String expression, Tree tree, String word){
+
+		queries.incrementAndGet();
+
+		List<Tree> matches = new ArrayList<Tree>();
+		int rule = rules.get(expression);
+		int root = positions.get(tree);
+
+		for (int i = firstCandidate(rule, root); i < counts[rule] && candidates[rule][i] < end[root]; i++){
+			if (matches(rule, candidates[rule][i], root, word)){
+				matches.add(nodes[candidates[rule][i]]);
+			}
+		}
+		return matches;
+	}
+
+	//Position of the first candidate of a rule at or after a node
+	private int firstCandidate(int rule, int node){
+
+		int i = Arrays.binarySearch(candidates[rule], 0, counts[rule], node);
+		return i >= 0 ? i : -i - 1;
+	}
+
+	public static void printStats(){
+		System.out.println("Tree index: " + indexed.get() + " trees indexed, " + visited.get() + " nodes visited, " + queries.get()
+				+ " rule queries answered");
+	}
+}
@@ -0,0 +1,155 @@
+/****************************************************************/
+/* Class WordNetLexicon                                         */
+/* WordNet lemma trie built once per JVM and shared, read-only, */
+/* by all the definition parsers                                */
+/*                                                              */
+/* Author: Vivian Silva                                         */
+/****************************************************************/
+
+package extraction;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import edu.mit.jwi.Dictionary;
+import edu.mit.jwi.IDictionary;
+import edu.mit.jwi.RAMDictionary;
+import edu.mit.jwi.data.ILoadPolicy;
+import edu.mit.jwi.item.IIndexWord;
+import edu.mit.jwi.item.POS;
+
+public class WordNetLexicon {
+
+	private static WordNetLexicon shared;
+
+	private final String wnPath;
+	private final boolean inMemory;
+	private final CountDownLatch ready = new CountDownLatch(1);
+
+	//Written once by the loading thread, read without locks afterwards
+	private volatile boolean loaded = false;
+	private LexiconTrie trie;
+	private Exception failure;
+
+	private WordNetLexicon(String wnPath, boolean inMemory){
+
+		this.wnPath = wnPath;
+		this.inMemory = inMemory;
+	}
+
+	//Return the lexicon shared by the whole JVM, loading it on the first call, either right away or in a background thread
+	public static synchronized WordNetLexicon getShared(String wnPath, boolean inMemory, boolean background,
+			List<String> notPlural, Map<String, String> plExceptions) throws IOException{
+
+		if (shared == null){
+			final WordNetLexicon lexicon = new WordNetLexicon(wnPath, inMemory);
+			final List<String> np = notPlural;
+			final Map<String, String> pe = plExceptions;
+
+			if (background){
+				Thread loader = new Thread(new Runnable(){
+					public void run(){
+						lexicon.load(np, pe);
+					}
+				}, "WordNet loader");
+				loader.setDaemon(true);
+				loader.start();
+			}
+			else{
+				lexicon.load(np, pe);
+
+				if (lexicon.failure != null){
+					throw new IOException("WordNet could not be loaded from " + wnPath, lexicon.failure);
+				}
+			}
+			shared = lexicon;
+		}
+		return shared;
+	}
+
+	//Open the dictionary and build the lemma trie from its index words; the dictionary is closed once the trie is built
+	private void load(List<String> notPlural, Map<String, String> plExceptions){
+
+		IDictionary dict = null;
+
+		try{
+			long start = System.currentTimeMillis();
+
+			if (inMemory){
+				dict = new RAMDictionary(new File(wnPath), ILoadPolicy.IMMEDIATE_LOAD);
+			}
+			else{
+				dict = new Dictionary(new URL("file", null, wnPath));
+			}
+			dict.open();
+
+			trie = LexiconTrie.build(lemmas(dict, POS.NOUN), lemmas(dict, POS.VERB), lemmas(dict, POS.ADJECTIVE), 
+					lemmas(dict, POS.ADVERB), notPlural, plExceptions);
+
+			System.out.println("WordNet " + (inMemory ? "loaded into memory" : "read from disk") + " in " 
+					+ (System.currentTimeMillis() - start) + " ms (" + trie.size() + " trie nodes, " 
+					+ (trie.bytes() >> 10) + " KB)");
+			loaded = true;
+		}
+		catch (Exception e){
+			e.printStackTrace();
+			failure = e;
+		}
+		finally{
+			if (dict != null){
+				dict.close();
+			}
+			ready.countDown();
+		}
+	}
+
+	//Iterate over the lemmas of a POS
+	private static Iterator<String> lemmas(IDictionary dict, POS pos){
+
+		final Iterator<IIndexWord> words = dict.getIndexWordIterator(pos);
+
+		return new Iterator<String>(){
+			public boolean hasNext(){
+				return words.hasNext();
+			}
+			public String next(){
+				return words.next().getLemma();
+			}
+		};
+	}
+
+	//Wait for a background load to finish; once loaded this is a single volatile read
+	private void await(){
+
+		if (!loaded){
+			try{
+				ready.await();
+			}
+			catch (InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+			if (!loaded){
+				throw new IllegalStateException("WordNet could not be loaded from " + wnPath, failure);
+			}
+		}
+	}
+
+	//Return the index of the first word of the longest suffix of the expression that is a WordNet entry, or -1
+	public int longestSuffix(List<String> exp, int posMask){
+
+		await();
+		return trie.longestSuffix(exp, posMask);
+	}
+
+	//Check whether a lemma is a WordNet entry for any of the POS in the mask
+	public boolean contains(String lemma, int posMask){
+
+		await();
+		return trie.contains(lemma, posMask);
+	}
+}